@@ -0,0 +1,339 @@
+package net.virtualinfinity.telnet;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs plain blocking code, such as a command shell, for a session.  Use an instance as the session's listener, and
+ * once the session is connected, the handler is started on its own thread with a decoded {@link InputStream} and an
+ * escaping {@link OutputStream}.  The event loop thread never blocks: received data is copied into a bounded input
+ * buffer, and written data is handed to the loop through a {@link SessionWriteQueue}.
+ *
+ * On Java 21 and later, handlers run on virtual threads, so a thread per session is cheap even with a very large
+ * number of sessions.  On older versions they run on daemon platform threads.  The streams block with
+ * {@link ReentrantLock}s rather than monitors, so a waiting virtual thread doesn't pin its carrier.
+ *
+ * A peer which sends more than the input buffer can hold, before the handler has read it, is disconnected.  Writers
+ * block while the session is above its high watermark, or while more than the maximum amount of output is waiting to
+ * be handed to the loop.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class BlockingSession implements SessionListener {
+    private static final Logger logger = Logger.getLogger(BlockingSession.class);
+    private static final String VIRTUAL_THREADS = "net.virtualinfinity.telnet.VirtualSessionThreads";
+    private static final ThreadFactory THREADS = loadThreads();
+    private static final int DEFAULT_MAX_QUEUED_OUTPUT = 64 * 1024;
+
+    private final Handler handler;
+    private final Executor loopExecutor;
+    private final int maxQueuedOutput;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition readable = lock.newCondition();
+    private final Condition writable = lock.newCondition();
+    private final ReceivedDataLimit inputLimit;
+    private final byte[] input;
+    /**
+     * Used by the single byte read and write methods, guarded by the lock.
+     */
+    private final byte[] readByte = new byte[1];
+    private final byte[] writeByte = new byte[1];
+    private final InputStream inputStream = new SessionInputStream();
+    private final OutputStream outputStream = new SessionOutputStream();
+    private int head;
+    private boolean ended;
+    private IOException failure;
+    private boolean sessionWritable = true;
+    private volatile Session session;
+    private volatile SessionWriteQueue writeQueue;
+
+    /**
+     * The code to run for each session.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * Handles the session.  The session is closed when this returns.
+         *
+         * @param session the blocking session, whose streams may be used from this thread.
+         *
+         * @throws IOException if the session fails.
+         */
+        void handle(BlockingSession session) throws IOException;
+    }
+
+    /**
+     * Creates a blocking session with 64K of input buffer, which blocks writers once 64K of output is waiting.
+     *
+     * @param handler the code to run for the session.
+     * @param loopExecutor runs tasks on the thread servicing the session's event loop.
+     */
+    public BlockingSession(Handler handler, Executor loopExecutor) {
+        this(handler, loopExecutor, ReceivedDataLimit.DEFAULT_MAX_BYTES, DEFAULT_MAX_QUEUED_OUTPUT);
+    }
+
+    /**
+     * @param handler the code to run for the session.
+     * @param loopExecutor runs tasks on the thread servicing the session's event loop.
+     * @param inputCapacity the number of received bytes which may be waiting for the handler to read them.
+     * @param maxQueuedOutput the number of written bytes which may be waiting to be handed to the event loop.
+     */
+    public BlockingSession(Handler handler, Executor loopExecutor, int inputCapacity, int maxQueuedOutput) {
+        this.handler = handler;
+        this.loopExecutor = loopExecutor;
+        this.maxQueuedOutput = maxQueuedOutput;
+        this.inputLimit = new ReceivedDataLimit(inputCapacity);
+        this.input = new byte[inputCapacity];
+    }
+
+    /**
+     * @return the decoded data received from the remote end.  Reads block until data arrives, and return -1 once
+     * the connection has closed.
+     */
+    public InputStream inputStream() {
+        return inputStream;
+    }
+
+    /**
+     * @return a stream which escapes and sends data to the remote end.  Closing it closes the session.
+     */
+    public OutputStream outputStream() {
+        return outputStream;
+    }
+
+    /**
+     * @return the session.  It may only be used on the event loop thread, so use {@link #loopExecutor()} to access
+     * it from the handler.
+     */
+    public Session session() {
+        return session;
+    }
+
+    /**
+     * @return the executor which runs tasks on the thread servicing the session's event loop.
+     */
+    public Executor loopExecutor() {
+        return loopExecutor;
+    }
+
+    @Override
+    public void connected(Session session) {
+        this.session = session;
+        this.writeQueue = new SessionWriteQueue(session, loopExecutor, this::drained);
+        THREADS.newThread(this::run).start();
+    }
+
+    @Override
+    public void incomingData(ByteBuffer data) {
+        lock.lock();
+        try {
+            final int size = size();
+            final int length = data.remaining();
+            if (!inputLimit.reserve(data, session, this::failed)) {
+                return;
+            }
+            // There is room, so whatever doesn't fit before the end of the array fits before the head.
+            final int tail = (head + size) % input.length;
+            final int first = Math.min(length, input.length - tail);
+            data.get(input, tail, first);
+            data.get(input, 0, length - first);
+            readable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void writabilityChanged(boolean writable) {
+        lock.lock();
+        try {
+            sessionWritable = writable;
+            if (writable) {
+                this.writable.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void connectionClosed() {
+        lock.lock();
+        try {
+            ended();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void connectionFailed(IOException e) {
+        lock.lock();
+        try {
+            failed(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run() {
+        try {
+            handler.handle(this);
+        } catch (final IOException | RuntimeException e) {
+            logger.warn("Session handler failed", e);
+        } finally {
+            loopExecutor.execute(this::closeSession);
+        }
+    }
+
+    /**
+     * @return the number of received bytes which the handler hasn't read, guarded by the lock.
+     */
+    private int size() {
+        return (int) inputLimit.waitingBytes();
+    }
+
+    private void failed(IOException e) {
+        if (failure == null) {
+            failure = e;
+        }
+        ended();
+    }
+
+    private void ended() {
+        ended = true;
+        readable.signalAll();
+        writable.signalAll();
+    }
+
+    private void drained() {
+        lock.lock();
+        try {
+            writable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeSession() {
+        try {
+            session.close();
+        } catch (final IOException e) {
+            logger.warn("Unable to close session", e);
+        }
+    }
+
+    private static ThreadFactory loadThreads() {
+        try {
+            return (ThreadFactory) Class.forName(VIRTUAL_THREADS).getDeclaredConstructor().newInstance();
+        } catch (final ReflectiveOperationException | LinkageError ignore) {
+            // We're running on a Java without virtual threads.
+            final AtomicInteger count = new AtomicInteger();
+            return runnable -> {
+                final Thread thread = new Thread(runnable, "telnet-session-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+    private final class SessionInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            lock.lock();
+            try {
+                return read(readByte, 0, 1) < 0 ? -1 : readByte[0] & 255;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            lock.lock();
+            try {
+                while (size() == 0 && !ended) {
+                    readable.await();
+                }
+                final int size = size();
+                if (size == 0) {
+                    if (failure != null) {
+                        throw new IOException(failure);
+                    }
+                    return -1;
+                }
+                final int count = Math.min(length, Math.min(size, input.length - head));
+                System.arraycopy(input, head, buffer, offset, count);
+                head = (head + count) % input.length;
+                inputLimit.release(count);
+                return count;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int available() {
+            lock.lock();
+            try {
+                return size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final class SessionOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            lock.lock();
+            try {
+                writeByte[0] = (byte) b;
+                write(writeByte, 0, 1);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            final SessionWriteQueue writeQueue = BlockingSession.this.writeQueue;
+            lock.lock();
+            try {
+                while (!ended && (!sessionWritable || writeQueue.queuedBytes() >= maxQueuedOutput)) {
+                    writable.await();
+                }
+                if (ended) {
+                    throw new IOException("Session has ended", failure);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } finally {
+                lock.unlock();
+            }
+            writeQueue.write(ByteBuffer.wrap(buffer, offset, length));
+        }
+
+        @Override
+        public void close() {
+            loopExecutor.execute(BlockingSession.this::closeSession);
+        }
+    }
+}
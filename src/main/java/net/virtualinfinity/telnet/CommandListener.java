@@ -0,0 +1,18 @@
+package net.virtualinfinity.telnet;
+
+/**
+ * A listener which is informed when the remote end sends a particular command.
+ *
+ * @see CommandTable#setListener(int, CommandListener)
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+@FunctionalInterface
+public interface CommandListener {
+    /**
+     * Called when IAC <i>command</i> has been received.
+     *
+     * @param command the command byte, as an unsigned value.
+     */
+    void commandReceived(int command);
+}
@@ -46,49 +46,16 @@ interface CommandReceiver {
     void receivedEndSubNegotiation();
 
     /**
-     * Received IAC IAC
-     */
-    void receivedIAC();
-
-    /**
-     * Received data.
+     * Received data. Escaped IAC IAC pairs have already been decoded to a single IAC byte.
      *
-     * @param data This data is guaranteed to not have an IAC in it.
+     * @param data the decoded data. Only valid for the duration of the call.
      */
     void receivedData(ByteBuffer data);
 
     /**
-     * Received IAC BRK
-     */
-    void receivedBreak();
-
-    /**
-     * Received IAC IP
-     */
-    void receivedInterrupt();
-
-    /**
-     * Received IAC AO
-     */
-    void receivedAbortOutput();
-
-    /**
-     * Received IAC AYT
-     */
-    void receivedAreYouThere();
-
-    /**
-     * Received IAC EC
-     */
-    void receivedEraseCharacter();
-
-    /**
-     * Received IAC EL
-     */
-    void receivedEraseLine();
-
-    /**
-     * Received IAC GA
+     * Received IAC <i>command</i>, for any command other than those with their own methods.
+     *
+     * @param command The command byte, as an unsigned value.
      */
-    void receivedGoAhead();
+    void receivedCommand(int command);
 }
@@ -9,57 +9,26 @@ import java.nio.ByteBuffer;
  * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
  */
 class CommandRouter implements CommandReceiver {
-    private final SessionListener listener;
+    private final CommandTable commands;
     private final SubNegotiationDataRouter dataRouter;
     private final OptionCommandManager optionCommandManager;
 
     /**
-     * Constructs a new CommandRouter that passes commands to the session listener, data router and option manager as needed.
+     * Constructs a new CommandRouter that passes commands to the command table, data router and option manager as needed.
      *
-     * @param listener the session listener.
-     * @param dataRouter teh data router.
+     * @param commands the command table.
+     * @param dataRouter the data router.
      * @param optionCommandManager the option manager.
      */
-    public CommandRouter(SessionListener listener, SubNegotiationDataRouter dataRouter, OptionCommandManager optionCommandManager) {
-        this.listener = listener;
+    public CommandRouter(CommandTable commands, SubNegotiationDataRouter dataRouter, OptionCommandManager optionCommandManager) {
+        this.commands = commands;
         this.dataRouter = dataRouter;
         this.optionCommandManager = optionCommandManager;
     }
 
     @Override
-    public void receivedBreak() {
-        listener.doBreak();
-    }
-
-    @Override
-    public void receivedInterrupt() {
-        listener.doInterrupt();
-    }
-
-    @Override
-    public void receivedAbortOutput() {
-        listener.doAbortOutput();
-    }
-
-    @Override
-    public void receivedAreYouThere() {
-        listener.doAreYouThere();
-    }
-
-    @Override
-    public void receivedEraseCharacter() {
-        listener.doEraseCharacter();
-    }
-
-    @Override
-    public void receivedEraseLine() {
-        listener.doEraseLine();
-
-    }
-
-    @Override
-    public void receivedGoAhead() {
-        listener.doGoAhead();
+    public void receivedCommand(int command) {
+        commands.dispatch(command);
     }
 
     @Override
@@ -72,11 +41,6 @@ class CommandRouter implements CommandReceiver {
         dataRouter.receivedData(bytes);
     }
 
-    @Override
-    public void receivedIAC() {
-        dataRouter.receivedIAC();
-    }
-
     @Override
     public void receivedStartSubNegotiation(int optionId) {
         dataRouter.receivedStartSubNegotiation(optionCommandManager.getSubNegotiationListener(optionId));
@@ -0,0 +1,129 @@
+package net.virtualinfinity.telnet;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatches the commands received on a session.  There is one entry for every possible command byte, each with a
+ * listener and a count of how many times the command has been received.
+ *
+ * The standard commands are registered to call the corresponding {@link SessionListener} methods.  Listeners may be
+ * replaced, or added for other commands.  Commands without a listener are counted, and reported in the log at most
+ * once every {@value #REPORT_INTERVAL_SECONDS} seconds, so that a peer sending garbage can't flood the log.
+ *
+ * Option negotiation and sub-negotiation commands (DO, DON'T, WILL, WON'T, SB, and SE), and escaped IACs, are
+ * handled separately and never appear in this table.
+ *
+ * @see Session#commands()
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class CommandTable {
+    private static final Logger logger = Logger.getLogger(CommandTable.class);
+    private static final long REPORT_INTERVAL_SECONDS = 10;
+    private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(REPORT_INTERVAL_SECONDS);
+    private static final CommandListener IGNORE = command -> {};
+
+    private final CommandListener[] listeners = new CommandListener[256];
+    private final long[] counts = new long[256];
+    private boolean reported;
+    private long lastReport;
+    private long unreported;
+
+    CommandTable() {
+    }
+
+    /**
+     * Creates a command table with the standard commands registered to call the corresponding session listener methods.
+     *
+     * @param listener the session listener.
+     *
+     * @return a new command table.
+     */
+    static CommandTable forListener(SessionListener listener) {
+        return new CommandTable()
+            .setListener(TelnetConstants.NOP, IGNORE)
+            .setListener(TelnetConstants.DATA_MARK, command -> listener.doDataMark())
+            .setListener(TelnetConstants.BRK, command -> listener.doBreak())
+            .setListener(TelnetConstants.IP, command -> listener.doInterrupt())
+            .setListener(TelnetConstants.AO, command -> listener.doAbortOutput())
+            .setListener(TelnetConstants.AYT, command -> listener.doAreYouThere())
+            .setListener(TelnetConstants.EC, command -> listener.doEraseCharacter())
+            .setListener(TelnetConstants.EL, command -> listener.doEraseLine())
+            .setListener(TelnetConstants.GA, command -> listener.doGoAhead())
+            .setListener(TelnetConstants.EOR, command -> listener.doEndOfRecord())
+            .setListener(TelnetConstants.ABORT, command -> listener.doAbort())
+            .setListener(TelnetConstants.SUSP, command -> listener.doSuspend())
+            .setListener(TelnetConstants.EOF, command -> listener.doEndOfFile());
+    }
+
+    /**
+     * Set the listener for a command, replacing any previous listener.
+     *
+     * @param command the command byte. See {@link TelnetConstants}.
+     * @param listener the listener, or null to treat the command as unexpected.
+     *
+     * @return this.
+     */
+    public CommandTable setListener(byte command, CommandListener listener) {
+        return setListener(command & 0xFF, listener);
+    }
+
+    /**
+     * Set the listener for a command, replacing any previous listener.
+     *
+     * @param command the command, as an unsigned value between 0 and 255.
+     * @param listener the listener, or null to treat the command as unexpected.
+     *
+     * @return this.
+     */
+    public CommandTable setListener(int command, CommandListener listener) {
+        listeners[command & 0xFF] = listener;
+        return this;
+    }
+
+    /**
+     * @param command the command, as an unsigned value between 0 and 255.
+     *
+     * @return the listener for the command, or null if there is none.
+     */
+    public CommandListener getListener(int command) {
+        return listeners[command & 0xFF];
+    }
+
+    /**
+     * @param command the command, as an unsigned value between 0 and 255.
+     *
+     * @return the number of times the command has been received, whether or not it had a listener.
+     */
+    public long count(int command) {
+        return counts[command & 0xFF];
+    }
+
+    /**
+     * Dispatch a received command to its listener.
+     *
+     * @param command the command, as an unsigned value between 0 and 255.
+     */
+    void dispatch(int command) {
+        ++counts[command];
+        final CommandListener listener = listeners[command];
+        if (listener != null) {
+            listener.commandReceived(command);
+        } else {
+            unexpected(command);
+        }
+    }
+
+    private void unexpected(int command) {
+        ++unreported;
+        final long now = System.nanoTime();
+        if (!reported || now - lastReport >= REPORT_INTERVAL) {
+            logger.error("Unexpected command after IAC: " + command + " (" + unreported + " unexpected commands since last report)");
+            reported = true;
+            lastReport = now;
+            unreported = 0;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package net.virtualinfinity.telnet;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Passes buffers on to the raw output, except while corked.  Buffers written while corked are held until the last
+ * {@link #uncork()}, and then small buffers are combined, so that many small writes in a row become a single write.
+ * Buffers of at least {@link #COALESCE_LIMIT} bytes are passed on as they are, rather than copied.
+ *
+ * Corks nest, so the output is only flushed when every cork has been removed.
+ *
+ * The number of bytes being held is reported as it changes, so that held output still counts towards the session's
+ * watermarks.
+ *
+ * @see Session#cork()
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+final class CorkingOutput implements Consumer<ByteBuffer> {
+    static final int COALESCE_LIMIT = 1024;
+
+    private final Consumer<ByteBuffer> output;
+    private final IntConsumer held;
+    private final List<ByteBuffer> corked = new ArrayList<>();
+    private int corks;
+
+    /**
+     * @param output the raw output.
+     */
+    CorkingOutput(Consumer<ByteBuffer> output) {
+        this(output, bytes -> { });
+    }
+
+    /**
+     * @param output the raw output.
+     * @param held informed of the number of bytes newly held, or negative for bytes released just before they are
+     * passed to the raw output.
+     */
+    CorkingOutput(Consumer<ByteBuffer> output, IntConsumer held) {
+        this.output = output;
+        this.held = held;
+    }
+
+    @Override
+    public void accept(ByteBuffer buffer) {
+        if (corks == 0) {
+            output.accept(buffer);
+        } else if (buffer.hasRemaining()) {
+            corked.add(buffer);
+            held.accept(buffer.remaining());
+        }
+    }
+
+    /**
+     * Holds written buffers until the matching call to {@link #uncork()}.
+     */
+    void cork() {
+        ++corks;
+    }
+
+    /**
+     * Removes a cork. If this was the last cork, the held buffers are written.
+     */
+    void uncork() {
+        if (corks == 0) {
+            throw new IllegalStateException("Not corked");
+        }
+        if (--corks == 0) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        final int size = corked.size();
+        int start = 0;
+        for (int index = 0; index <= size; ++index) {
+            if (index == size || corked.get(index).remaining() >= COALESCE_LIMIT) {
+                coalesce(start, index);
+                if (index < size) {
+                    release(corked.get(index));
+                }
+                start = index + 1;
+            }
+        }
+        corked.clear();
+    }
+
+    /**
+     * Writes a run of small buffers as a single buffer. The buffers are consumed.
+     *
+     * @param from the index of the first buffer.
+     * @param to the index after the last buffer.
+     */
+    private void coalesce(int from, int to) {
+        if (to - from == 1) {
+            release(corked.get(from));
+        } else if (to - from > 1) {
+            int length = 0;
+            for (int index = from; index < to; ++index) {
+                length += corked.get(index).remaining();
+            }
+            final ByteBuffer combined = ByteBuffer.allocate(length);
+            for (int index = from; index < to; ++index) {
+                combined.put(corked.get(index));
+            }
+            combined.flip();
+            release(combined);
+        }
+    }
+
+    private void release(ByteBuffer buffer) {
+        held.accept(-buffer.remaining());
+        output.accept(buffer);
+    }
+}
@@ -1,5 +1,6 @@
 package net.virtualinfinity.telnet;
 
+import net.virtualinfinity.nio.ByteBufferConsumer;
 import net.virtualinfinity.nio.EventLoop;
 import net.virtualinfinity.nio.OutputBuffer;
 import net.virtualinfinity.nio.SocketChannelInterface;
@@ -16,23 +17,43 @@ import java.nio.channels.ClosedChannelException;
 class DefaultSessionStarter implements SessionStarter {
     private final int inputBufferSize;
     private final boolean sendAllBeforeReading;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final NegotiationProfile profile;
 
-    public DefaultSessionStarter(int inputBufferSize, boolean sendAllBeforeReading) {
+    public DefaultSessionStarter(int inputBufferSize, boolean sendAllBeforeReading, int lowWatermark, int highWatermark, NegotiationProfile profile) {
         this.inputBufferSize = inputBufferSize;
         this.sendAllBeforeReading = sendAllBeforeReading;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.profile = profile;
     }
 
     @Override
     public Session startSession(SocketChannelInterface socketChannel, SessionListener sessionListener, EventLoop loop) throws ClosedChannelException {
         final OutputBuffer outputBuffer = new OutputBuffer();
-        final OptionCommandManagerImpl optionManager = new OptionCommandManagerImpl(outputBuffer::append);
-        final OutputChannel outputChannel = new OutputChannel(outputBuffer::append);
-        final SubNegotiationOutputChannel subNegotiationOutputChannel = optionManager.subNegotiationOutputChannel(outputChannel);
-        final Session session = new SessionImpl(optionManager.options(), outputChannel, subNegotiationOutputChannel, socketChannel::close);
-        final CommandRouter commandReceiver = new CommandRouter(sessionListener, new SubNegotiationDataRouterImpl(sessionListener), optionManager);
+        final WatermarkedOutput output = new WatermarkedOutput(outputBuffer::append, lowWatermark, highWatermark, sessionListener);
+        final CorkingOutput corkingOutput = new CorkingOutput(output, output::hold);
+        final OptionCommandManagerImpl optionManager = new OptionCommandManagerImpl(corkingOutput);
+        optionManager.apply(profile);
+        final OutputChannel outputChannel = new OutputChannel(corkingOutput);
+        final SubNegotiationOutputChannel subNegotiationOutputChannel = optionManager.subNegotiationOutputChannel(output::update);
+        final CommandTable commands = CommandTable.forListener(sessionListener);
+        final FlowControlledChannel channel = new FlowControlledChannel(socketChannel, output);
+        final Session session = new SessionImpl(optionManager.options(), outputChannel, subNegotiationOutputChannel, commands, output, corkingOutput, channel);
+        final CommandRouter commandReceiver = new CommandRouter(commands, new SubNegotiationDataRouterImpl(sessionListener), optionManager);
         final ClientSessionConnectionListener conListener = new ClientSessionConnectionListener(sessionListener, session);
         final InputChannelDecoder decoder = new InputChannelDecoder(commandReceiver);
-        final SocketSelectionActions socketSelectionActions = new SocketSelectionActions(socketChannel, conListener, decoder, outputBuffer, inputBufferSize, sendAllBeforeReading);
+        final ByteBufferConsumer input = inputBuffer -> {
+            // Everything written in response to this read is sent together.
+            corkingOutput.cork();
+            try {
+                decoder.accept(inputBuffer);
+            } finally {
+                corkingOutput.uncork();
+            }
+        };
+        final SocketSelectionActions socketSelectionActions = new SocketSelectionActions(channel, conListener, input, outputBuffer, inputBufferSize, sendAllBeforeReading);
         socketSelectionActions.register(loop);
         return session;
     }
@@ -54,7 +75,12 @@ class DefaultSessionStarter implements SessionStarter {
 
         @Override
         public void connected() {
-            sessionListener.connected(session);
+            session.cork();
+            try {
+                sessionListener.connected(session);
+            } finally {
+                session.uncork();
+            }
         }
 
     }
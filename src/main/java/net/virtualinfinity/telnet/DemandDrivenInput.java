@@ -0,0 +1,198 @@
+package net.virtualinfinity.telnet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers a session's decoded input only as fast as it has been requested, in the style of Reactive Streams.  This
+ * holds the demand accounting, so it can be shared by adapters for different stream APIs.
+ *
+ * Received data is copied and held on the event loop thread until there is demand for it.  Demand may be added from
+ * any thread, and delivery always happens on the event loop thread.  Reading from the socket is suspended whenever
+ * the demand runs out, and resumed once there is more, so a slow consumer holds the peer back through TCP flow
+ * control.  Only the rest of the read which exhausted the demand is held.
+ *
+ * @see SessionListener#incomingData(ByteBuffer)
+ * @see Session#suspendReading()
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+abstract class DemandDrivenInput implements SessionListener {
+    private final Executor loopExecutor;
+    private final AtomicLong demand = new AtomicLong();
+    private final Runnable drain = this::drain;
+    private volatile boolean subscribed;
+    /**
+     * The following are only accessed on the event loop thread.
+     */
+    private final ArrayDeque<ByteBuffer> buffered = new ArrayDeque<>();
+    private boolean ended;
+    private Throwable failure;
+    private boolean terminated;
+    private boolean draining;
+    private boolean readingSuspended;
+    private Session session;
+
+    /**
+     * @param loopExecutor runs tasks on the thread servicing the session's event loop.
+     */
+    DemandDrivenInput(Executor loopExecutor) {
+        this.loopExecutor = loopExecutor;
+    }
+
+    /**
+     * Called on the event loop thread with each requested buffer of data.
+     *
+     * @param data a copy of the received data, which belongs to the receiver.
+     */
+    abstract void next(ByteBuffer data);
+
+    /**
+     * Called on the event loop thread if the connection fails, or the consumer requests an invalid amount.
+     *
+     * @param failure the reason.
+     */
+    abstract void error(Throwable failure);
+
+    /**
+     * Called on the event loop thread once the connection has closed and all received data has been delivered.
+     */
+    abstract void complete();
+
+    /**
+     * Adds demand for more buffers.  May be called from any thread.
+     *
+     * @param count the number of buffers, which must be positive.  {@link Long#MAX_VALUE} means there is no limit.
+     */
+    final void request(long count) {
+        if (count <= 0) {
+            loopExecutor.execute(() -> {
+                // A broken consumer, so it's told right away rather than after the held data.
+                if (!terminated) {
+                    terminated = true;
+                    buffered.clear();
+                    error(new IllegalArgumentException("Requested " + count + " buffers"));
+                    closeSession();
+                }
+            });
+            return;
+        }
+        demand.getAndAccumulate(count, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+        loopExecutor.execute(drain);
+    }
+
+    /**
+     * Stops delivery and closes the session.  May be called from any thread.
+     */
+    final void cancel() {
+        loopExecutor.execute(() -> {
+            terminated = true;
+            buffered.clear();
+            closeSession();
+        });
+    }
+
+    /**
+     * Starts delivery to the consumer, which may be told straight away if the connection has already ended.  May be
+     * called from any thread.
+     */
+    final void subscribed() {
+        subscribed = true;
+        loopExecutor.execute(drain);
+    }
+
+    @Override
+    public void connected(Session session) {
+        this.session = session;
+        updateReading();
+    }
+
+    @Override
+    public void incomingData(ByteBuffer data) {
+        if (terminated || ended) {
+            data.position(data.limit());
+            return;
+        }
+        final ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+        copy.put(data).flip();
+        buffered.addLast(copy);
+        drain();
+    }
+
+    @Override
+    public void connectionClosed() {
+        ended = true;
+        drain();
+    }
+
+    @Override
+    public void connectionFailed(IOException e) {
+        fail(e);
+    }
+
+    private void fail(Throwable failure) {
+        if (this.failure == null) {
+            this.failure = failure;
+        }
+        ended = true;
+        drain();
+    }
+
+    private void drain() {
+        if (draining || !subscribed) {
+            // A callback requested more, which this loop will deliver.
+            return;
+        }
+        draining = true;
+        try {
+            while (!terminated && !buffered.isEmpty() && demand.get() > 0) {
+                if (demand.get() != Long.MAX_VALUE) {
+                    demand.decrementAndGet();
+                }
+                next(buffered.removeFirst());
+            }
+            if (!terminated && ended && buffered.isEmpty()) {
+                terminated = true;
+                if (failure != null) {
+                    error(failure);
+                } else {
+                    complete();
+                }
+            }
+        } finally {
+            draining = false;
+        }
+        updateReading();
+    }
+
+    /**
+     * Reads from the socket only while there is demand which the held data won't satisfy.
+     */
+    private void updateReading() {
+        if (session == null || terminated) {
+            return;
+        }
+        final boolean suspend = demand.get() == 0 || !buffered.isEmpty();
+        if (suspend != readingSuspended) {
+            readingSuspended = suspend;
+            if (suspend) {
+                session.suspendReading();
+            } else {
+                session.resumeReading();
+            }
+        }
+    }
+
+    private void closeSession() {
+        if (session != null) {
+            try {
+                session.close();
+            } catch (final IOException ignore) {
+                // The session is going away either way.
+            }
+        }
+    }
+}
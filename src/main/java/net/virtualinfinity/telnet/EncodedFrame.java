@@ -0,0 +1,69 @@
+package net.virtualinfinity.telnet;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Data which has been escaped once, ready to be sent to any number of sessions.  Writing a frame to a session only
+ * queues a read-only view of the encoded bytes, so the cost of sending the same data to many sessions doesn't
+ * depend on its length.
+ *
+ * The frame holds its own copy of the data, so the original buffer may be reused once the frame has been created.
+ *
+ * @see OutputChannel#write(EncodedFrame)
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class EncodedFrame {
+    private final ByteBuffer encoded;
+
+    private EncodedFrame(ByteBuffer encoded) {
+        this.encoded = encoded.asReadOnlyBuffer();
+    }
+
+    /**
+     * Encodes the data between the position and limit of the given buffer.  The buffer itself isn't modified.
+     *
+     * @param data the data to encode.
+     *
+     * @return the encoded frame.
+     */
+    public static EncodedFrame encode(ByteBuffer data) {
+        return new EncodedFrame(OutputChannel.escape(data, IacScanner.preferred(), true));
+    }
+
+    /**
+     * Encodes the given data.
+     *
+     * @param data the data to encode.
+     *
+     * @return the encoded frame.
+     */
+    public static EncodedFrame encode(byte[] data) {
+        return encode(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * @return the number of bytes which will be sent, including the escapes.
+     */
+    public int length() {
+        return encoded.remaining();
+    }
+
+    /**
+     * Writes this frame to each of the given sessions.
+     *
+     * @param sessions the sessions to send to.
+     */
+    public void writeTo(Iterable<? extends Session> sessions) {
+        for (final Session session : sessions) {
+            session.outputChannel().write(this);
+        }
+    }
+
+    /**
+     * @return a new read-only view of the encoded bytes, with its own position and limit.
+     */
+    ByteBuffer view() {
+        return encoded.duplicate();
+    }
+}
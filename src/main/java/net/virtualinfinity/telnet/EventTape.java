@@ -0,0 +1,186 @@
+package net.virtualinfinity.telnet;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A reusable record of the events decoded from a read, stored in a flat int array.
+ *
+ * Each event has a kind, such as {@link #DATA} or {@link #DO}, an argument (the option id for option commands, the
+ * command for other commands, or the index of the input buffer for data decoded from an array of buffers), and for
+ * data events the offset and length of the decoded data within the input buffer.  Offsets are
+ * absolute indexes into the buffer which was decoded, and are only valid until that buffer is modified.
+ *
+ * This allows a consumer to process a whole read in a single loop, without an interface call per command or a
+ * buffer view per data run.
+ *
+ * @see TelnetDecoder#decode(ByteBuffer, EventTape)
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class EventTape {
+    /**
+     * Received data. The data is at {@link #offset(int)} in the input buffer, and is {@link #length(int)} bytes long.
+     */
+    public static final int DATA = StreamState.RECEIVED_DATA;
+
+    /**
+     * Received IAC DO for the option in the argument.
+     */
+    public static final int DO = StreamState.RECEIVED_DO;
+
+    /**
+     * Received IAC DON'T for the option in the argument.
+     */
+    public static final int DONT = StreamState.RECEIVED_DONT;
+
+    /**
+     * Received IAC WILL for the option in the argument.
+     */
+    public static final int WILL = StreamState.RECEIVED_WILL;
+
+    /**
+     * Received IAC WON'T for the option in the argument.
+     */
+    public static final int WONT = StreamState.RECEIVED_WONT;
+
+    /**
+     * Received IAC SB for the option in the argument.
+     */
+    public static final int START_SUB_NEGOTIATION = StreamState.RECEIVED_START_SUB_NEGOTIATION;
+
+    /**
+     * Received IAC SE.
+     */
+    public static final int END_SUB_NEGOTIATION = StreamState.RECEIVED_END_SUB_NEGOTIATION;
+
+    /**
+     * Received any other command, which is in the argument.
+     */
+    public static final int COMMAND = StreamState.RECEIVED_COMMAND;
+
+    private static final int KIND = 0;
+    private static final int ARGUMENT = 1;
+    private static final int OFFSET = 2;
+    private static final int LENGTH = 3;
+    private static final int FIELDS = 4;
+
+    private int[] events;
+    private int size;
+
+    /**
+     * Creates a tape with room for 256 events. The tape grows as needed.
+     */
+    public EventTape() {
+        this(256);
+    }
+
+    /**
+     * Creates a tape with room for the given number of events. The tape grows as needed.
+     *
+     * @param initialCapacity the number of events.
+     */
+    public EventTape(int initialCapacity) {
+        events = new int[Math.max(1, initialCapacity) * FIELDS];
+    }
+
+    /**
+     * Removes all events, keeping the storage for reuse.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return the number of events recorded.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param event the index of the event.
+     *
+     * @return the kind of event, one of {@link #DATA}, {@link #DO}, {@link #DONT}, {@link #WILL}, {@link #WONT},
+     * {@link #START_SUB_NEGOTIATION}, {@link #END_SUB_NEGOTIATION} or {@link #COMMAND}.
+     */
+    public int kind(int event) {
+        return events[event * FIELDS + KIND];
+    }
+
+    /**
+     * @param event the index of the event.
+     *
+     * @return the option id for option commands, the command for other commands, or the index of the input buffer
+     * for data events.
+     */
+    public int argument(int event) {
+        return events[event * FIELDS + ARGUMENT];
+    }
+
+    /**
+     * @param event the index of the event.
+     *
+     * @return the index of the first byte of data in the input buffer, for data events.
+     */
+    public int offset(int event) {
+        return events[event * FIELDS + OFFSET];
+    }
+
+    /**
+     * @param event the index of the event.
+     *
+     * @return the number of bytes of data, for data events.
+     */
+    public int length(int event) {
+        return events[event * FIELDS + LENGTH];
+    }
+
+    void add(int kind, int argument, int offset, int length) {
+        int index = size * FIELDS;
+        if (index == events.length) {
+            events = Arrays.copyOf(events, events.length * 2);
+        }
+        events[index++] = kind;
+        events[index++] = argument;
+        events[index++] = offset;
+        events[index] = length;
+        ++size;
+    }
+
+    /**
+     * Sends all of the recorded events to the given receiver, in order.
+     *
+     * @param input the buffer which was decoded into this tape.
+     * @param commandReceiver the receiver.
+     */
+    void replay(ByteBuffer input, CommandReceiver commandReceiver) {
+        for (int event = 0; event < size; ++event) {
+            replay(event, input, commandReceiver);
+        }
+    }
+
+    /**
+     * Sends all of the recorded events to the given receiver, in order.
+     *
+     * @param inputs the buffers which were decoded into this tape.
+     * @param commandReceiver the receiver.
+     */
+    void replay(ByteBuffer[] inputs, CommandReceiver commandReceiver) {
+        for (int event = 0; event < size; ++event) {
+            replay(event, kind(event) == StreamState.RECEIVED_DATA ? inputs[argument(event)] : null, commandReceiver);
+        }
+    }
+
+    private void replay(int event, ByteBuffer input, CommandReceiver commandReceiver) {
+        final int kind = kind(event);
+        if (kind == StreamState.RECEIVED_DATA) {
+            final ByteBuffer data = input.duplicate();
+            data.limit(offset(event) + length(event));
+            data.position(offset(event));
+            commandReceiver.receivedData(data);
+        } else {
+            InputChannelDecoder.perform(kind, argument(event), commandReceiver);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package net.virtualinfinity.telnet;
+
+import net.virtualinfinity.nio.SocketChannelInterface;
+import net.virtualinfinity.nio.SocketSelectionActions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/**
+ * The socket channel given to {@link SocketSelectionActions}, which connects the session's flow control to the socket.
+ *
+ * After each write the output's watermarks are re-checked, so the session finds out as soon as its output has
+ * drained.  Reading is suspended while the session is unwritable, and while the application has asked for it to be,
+ * by removing read interest from the channel's selection key.  Reads are refused while suspended, in case the read
+ * interest is restored by the selection actions.
+ *
+ * All methods must be called on the event loop thread.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+final class FlowControlledChannel implements SocketChannelInterface {
+    private final SocketChannelInterface channel;
+    private final WatermarkedOutput output;
+    private SelectionKey key;
+    private boolean readingSuspended;
+    private boolean readInterestRemoved;
+
+    /**
+     * @param channel the socket channel.
+     * @param output the session's output, whose bytes are sent by writing to this channel.
+     */
+    FlowControlledChannel(SocketChannelInterface channel, WatermarkedOutput output) {
+        this.channel = channel;
+        this.output = output;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (readingSuspended || !output.update()) {
+            updateReadInterest();
+            return 0;
+        }
+        return channel.read(dst);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        final int written = channel.write(src);
+        if (output.update()) {
+            updateReadInterest();
+        }
+        return written;
+    }
+
+    @Override
+    public SelectionKey register(Selector selector, int ops, Object attachment) throws ClosedChannelException {
+        key = channel.register(selector, ops, attachment);
+        updateReadInterest();
+        return key;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Stops reading from the socket until {@link #resumeReading()} is called.
+     */
+    void suspendReading() {
+        readingSuspended = true;
+        updateReadInterest();
+    }
+
+    /**
+     * Reads from the socket again, unless the session is unwritable.
+     */
+    void resumeReading() {
+        readingSuspended = false;
+        updateReadInterest();
+    }
+
+    /**
+     * Only read interest which was removed here is restored, so the selection actions' own use of it isn't disturbed.
+     */
+    private void updateReadInterest() {
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        final int ops = key.interestOps();
+        if (readingSuspended || !output.update()) {
+            if ((ops & SelectionKey.OP_READ) != 0) {
+                key.interestOps(ops & ~SelectionKey.OP_READ);
+                readInterestRemoved = true;
+            }
+        } else if (readInterestRemoved) {
+            key.interestOps(ops | SelectionKey.OP_READ);
+            readInterestRemoved = false;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package net.virtualinfinity.telnet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * A session listener which passes every event on to another listener.  Subclasses override the events they need to
+ * see, or {@link #forward(Consumer)} to change how every event other than received data is delivered.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+abstract class ForwardingSessionListener implements SessionListener {
+    private final SessionListener delegate;
+
+    /**
+     * @param delegate the listener to pass events on to.
+     */
+    ForwardingSessionListener(SessionListener delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Delivers an event to the delegate.  The default implementation calls it immediately.
+     *
+     * @param event calls the delegate's callback for the event.
+     */
+    void forward(Consumer<SessionListener> event) {
+        event.accept(delegate);
+    }
+
+    /**
+     * Passes received data on to the delegate immediately, without going through {@link #forward(Consumer)}, since
+     * the buffer only belongs to the listener until the callback returns.
+     */
+    @Override
+    public void incomingData(ByteBuffer data) {
+        delegate.incomingData(data);
+    }
+
+    @Override
+    public void connected(Session session) {
+        forward(listener -> listener.connected(session));
+    }
+
+    @Override
+    public void connecting() {
+        forward(SessionListener::connecting);
+    }
+
+    @Override
+    public void doBreak() {
+        forward(SessionListener::doBreak);
+    }
+
+    @Override
+    public void doInterrupt() {
+        forward(SessionListener::doInterrupt);
+    }
+
+    @Override
+    public void doAbortOutput() {
+        forward(SessionListener::doAbortOutput);
+    }
+
+    @Override
+    public void doAreYouThere() {
+        forward(SessionListener::doAreYouThere);
+    }
+
+    @Override
+    public void doEraseCharacter() {
+        forward(SessionListener::doEraseCharacter);
+    }
+
+    @Override
+    public void doEraseLine() {
+        forward(SessionListener::doEraseLine);
+    }
+
+    @Override
+    public void doGoAhead() {
+        forward(SessionListener::doGoAhead);
+    }
+
+    @Override
+    public void doDataMark() {
+        forward(SessionListener::doDataMark);
+    }
+
+    @Override
+    public void doEndOfRecord() {
+        forward(SessionListener::doEndOfRecord);
+    }
+
+    @Override
+    public void doAbort() {
+        forward(SessionListener::doAbort);
+    }
+
+    @Override
+    public void doSuspend() {
+        forward(SessionListener::doSuspend);
+    }
+
+    @Override
+    public void doEndOfFile() {
+        forward(SessionListener::doEndOfFile);
+    }
+
+    @Override
+    public void writabilityChanged(boolean writable) {
+        forward(listener -> listener.writabilityChanged(writable));
+    }
+
+    @Override
+    public void connectionClosed() {
+        forward(SessionListener::connectionClosed);
+    }
+
+    @Override
+    public void connectionFailed(IOException e) {
+        forward(listener -> listener.connectionFailed(e));
+    }
+}
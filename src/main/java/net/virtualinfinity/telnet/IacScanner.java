@@ -0,0 +1,95 @@
+package net.virtualinfinity.telnet;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Locates IAC bytes in a buffer.  Rather than testing one byte at a time, eight bytes are read as a single long and
+ * tested all at once, with a byte-at-a-time scan for the tail which doesn't fill a whole word.
+ *
+ * Only absolute gets are used, so the position and limit of the buffer are never modified.  This works on both heap
+ * and direct buffers, in either byte order.
+ *
+ * On Java 17 and later, a subclass built on the incubating Vector API is shipped in the multi-release jar.  It is
+ * used by {@link #preferred()} whenever the <code>jdk.incubator.vector</code> module has been added to the runtime,
+ * otherwise this implementation is used.
+ *
+ * @see InputChannelDecoder
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+class IacScanner {
+    private static final String VECTOR_SCANNER = "net.virtualinfinity.telnet.VectorIacScanner";
+    private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private static final IacScanner WORD_AT_A_TIME = new IacScanner();
+    private static final IacScanner PREFERRED = loadPreferred();
+
+    IacScanner() {
+    }
+
+    /**
+     * @return the scanner which tests a long at a time.  Available on all platforms.
+     */
+    static IacScanner wordAtATime() {
+        return WORD_AT_A_TIME;
+    }
+
+    /**
+     * @return the fastest scanner available on this platform.
+     */
+    static IacScanner preferred() {
+        return PREFERRED;
+    }
+
+    private static IacScanner loadPreferred() {
+        try {
+            return (IacScanner) Class.forName(VECTOR_SCANNER).getDeclaredConstructor().newInstance();
+        } catch (final ReflectiveOperationException | LinkageError ignore) {
+            // Either we're running on an older Java, or the jdk.incubator.vector module wasn't added.
+            return WORD_AT_A_TIME;
+        }
+    }
+
+    /**
+     * Find the first IAC in the given range of the buffer.
+     *
+     * @param buffer the buffer to search.
+     * @param from the first index to search (inclusive).
+     * @param to the last index to search (exclusive).
+     *
+     * @return the index of the first IAC, or -1 if there is none in the range.
+     */
+    int indexOfIAC(ByteBuffer buffer, int from, int to) {
+        final boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        int index = from;
+        for (final int lastWord = to - Long.BYTES; index <= lastWord; index += Long.BYTES) {
+            final long found = iacBytes(buffer.getLong(index));
+            if (found != 0) {
+                // The lowest address is the most significant byte in big-endian, and the least in little-endian.
+                final int bits = bigEndian ? Long.numberOfLeadingZeros(found) : Long.numberOfTrailingZeros(found);
+                return index + (bits >>> 3);
+            }
+        }
+        for (; index < to; ++index) {
+            if (buffer.get(index) == TelnetConstants.IAC) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A variation on the "has zero byte" trick, which tests for 0xFF instead.  Adding one to the low seven bits of a
+     * byte only carries into the high bit when those seven bits are all set, and never carries into the next byte.
+     *
+     * @param word eight bytes of input.
+     *
+     * @return a word with the high bit set in exactly those bytes which were IAC, and all other bits clear.
+     */
+    static long iacBytes(long word) {
+        return ((word & LOW_SEVEN_BITS) + LOW_BITS) & word & HIGH_BITS;
+    }
+}
@@ -8,14 +8,20 @@ import java.nio.ByteBuffer;
 /**
  * Decodes received data as a telnet stream, sending the data to the given CommandReceiver.
  *
+ * Alternatively, the events from a read can be recorded on an {@link EventTape} with {@link #decode(ByteBuffer, EventTape)},
+ * and processed by the caller in a single pass. {@link TelnetDecoder} is the public entry point for that.
+ *
  * @see StreamState
  * @see CommandReceiver
  *
  * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
  */
 class InputChannelDecoder implements ByteBufferConsumer {
-    private StreamState state = StreamState.initial();
+    private int state = StreamState.initial();
     private final CommandReceiver commandReceiver;
+    private final IacScanner scanner;
+    private EventTape tape;
+    private int chunk;
 
     /**
      * Received data stream will be decoded and sent to the given receiver.
@@ -23,13 +29,235 @@ class InputChannelDecoder implements ByteBufferConsumer {
      * @param commandReceiver The command receiver.
      */
     public InputChannelDecoder(CommandReceiver commandReceiver) {
+        this(commandReceiver, IacScanner.preferred());
+    }
+
+    /**
+     * Received data stream will be decoded using the given scanner and sent to the given receiver.
+     *
+     * @param commandReceiver The command receiver.
+     * @param scanner The scanner used to find IAC bytes in the data stream.
+     */
+    InputChannelDecoder(CommandReceiver commandReceiver, IacScanner scanner) {
         this.commandReceiver = commandReceiver;
+        this.scanner = scanner;
     }
 
+    /**
+     * Decodes the input buffer.  Escaped IACs are unescaped in place, so the contents of a writable buffer between its
+     * position and limit may be modified.
+     *
+     * @param inputBuffer the received data.
+     *
+     * @throws IOException if the receiver throws one.
+     */
     @Override
     public void accept(ByteBuffer inputBuffer) throws IOException {
+        decode(inputBuffer);
+    }
+
+    /**
+     * Decodes a sequence of buffers, as filled by a scattering read, in order.  Commands may be split across the
+     * boundaries between buffers. Data is sent as a separate run for each buffer, without copying.
+     *
+     * @param inputBuffers the received data.
+     * @param offset the index of the first buffer to decode.
+     * @param length the number of buffers to decode.
+     *
+     * @see java.nio.channels.ScatteringByteChannel#read(ByteBuffer[], int, int)
+     */
+    void accept(ByteBuffer[] inputBuffers, int offset, int length) {
+        for (chunk = offset; chunk < offset + length; ++chunk) {
+            decode(inputBuffers[chunk]);
+        }
+        chunk = 0;
+    }
+
+    /**
+     * Decodes all of the given buffers, as filled by a scattering read, in order.
+     *
+     * @param inputBuffers the received data.
+     *
+     * @see #accept(ByteBuffer[], int, int)
+     */
+    void accept(ByteBuffer[] inputBuffers) {
+        accept(inputBuffers, 0, inputBuffers.length);
+    }
+
+    /**
+     * Decodes the input buffer, recording the events on the given tape instead of sending them to the receiver.
+     * Data events refer to the (possibly compacted) contents of the input buffer.
+     *
+     * @param inputBuffer the received data.
+     * @param eventTape the tape to append the events to.
+     */
+    void decode(ByteBuffer inputBuffer, EventTape eventTape) {
+        tape = eventTape;
+        try {
+            decode(inputBuffer);
+        } finally {
+            tape = null;
+        }
+    }
+
+    /**
+     * Decodes a sequence of buffers, recording the events on the given tape instead of sending them to the receiver.
+     * The argument of each data event is the index of the buffer which contains it.
+     *
+     * @param inputBuffers the received data.
+     * @param offset the index of the first buffer to decode.
+     * @param length the number of buffers to decode.
+     * @param eventTape the tape to append the events to.
+     */
+    void decode(ByteBuffer[] inputBuffers, int offset, int length, EventTape eventTape) {
+        tape = eventTape;
+        try {
+            accept(inputBuffers, offset, length);
+        } finally {
+            tape = null;
+        }
+    }
+
+    private void decode(ByteBuffer inputBuffer) {
         while (inputBuffer.hasRemaining()) {
-            state = state.accept(inputBuffer, commandReceiver);
+            if (state == StreamState.DATA) {
+                receiveData(inputBuffer, inputBuffer.position());
+            } else {
+                final int input = inputBuffer.get() & 0xFF;
+                final int transition = StreamState.transition(state, input);
+                final int action = StreamState.action(transition);
+                state = StreamState.nextState(transition);
+                if (action == StreamState.ESCAPED_IAC) {
+                    // The IAC just read is data, so it starts the next run.
+                    receiveData(inputBuffer, inputBuffer.position() - 1);
+                } else if (tape != null) {
+                    if (action != StreamState.NO_ACTION) {
+                        tape.add(action, input, 0, 0);
+                    }
+                } else {
+                    perform(action, input, commandReceiver);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends data up to the next command, or the rest of the buffer if there is none.
+     *
+     * Each IAC IAC pair is unescaped in place by shifting the rest of the run down over the second IAC, so the whole
+     * run is sent as a single buffer without any copying to a new buffer.  Read-only buffers can't be compacted, so
+     * the run is split after each escaped IAC instead.
+     *
+     * @param buffer the input buffer, positioned at the first byte which hasn't been examined.
+     * @param start the start of the run. This is before the position if the run begins with an escaped IAC.
+     */
+    private void receiveData(ByteBuffer buffer, int start) {
+        final int limit = buffer.limit();
+        final boolean compact = !buffer.isReadOnly();
+        int runStart = start;
+        int write = buffer.position();
+        int read = write;
+        while (read < limit) {
+            final int iac = scanner.indexOfIAC(buffer, read, limit);
+            if (iac < 0) {
+                write = move(buffer, read, limit, write);
+                read = limit;
+            } else if (iac + 1 < limit && buffer.get(iac + 1) == TelnetConstants.IAC) {
+                // Keep the first IAC as data, and drop the second.
+                write = move(buffer, read, iac + 1, write);
+                read = iac + 2;
+                if (!compact) {
+                    sendData(buffer, runStart, write);
+                    runStart = write = read;
+                }
+            } else {
+                write = move(buffer, read, iac, write);
+                read = iac + 1;
+                state = StreamState.IAC;
+                break;
+            }
+        }
+        buffer.position(read);
+        sendData(buffer, runStart, write);
+    }
+
+    /**
+     * Moves bytes down within the buffer. The regions may overlap.
+     *
+     * @param buffer the buffer.
+     * @param from the first byte to move.
+     * @param to the end of the bytes to move (exclusive).
+     * @param destination where to move the bytes to. Never after <code>from</code>.
+     *
+     * @return the index just past the last byte moved.
+     */
+    private static int move(ByteBuffer buffer, int from, int to, int destination) {
+        if (destination == from) {
+            return to;
+        }
+        if (buffer.hasArray()) {
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + from, buffer.array(), buffer.arrayOffset() + destination, to - from);
+            return destination + to - from;
+        }
+        for (int index = from; index < to; ++index) {
+            buffer.put(destination++, buffer.get(index));
+        }
+        return destination;
+    }
+
+    private void sendData(ByteBuffer buffer, int from, int to) {
+        if (from == to) {
+            return;
+        }
+        if (tape != null) {
+            tape.add(StreamState.RECEIVED_DATA, chunk, from, to - from);
+            return;
+        }
+        if (to == buffer.limit()) {
+            // The run reaches the end of the buffer, so send the buffer itself rather than creating a view.
+            buffer.position(from);
+            commandReceiver.receivedData(buffer);
+            // Ensure that the buffer has been consumed.
+            buffer.position(to);
+            return;
+        }
+        final ByteBuffer data = buffer.duplicate();
+        data.limit(to);
+        data.position(from);
+        commandReceiver.receivedData(data);
+    }
+
+    /**
+     * Performs the action of a transition.
+     *
+     * @param action the action.
+     * @param input the input byte which caused the transition.
+     * @param commandReceiver the receiver of the resulting command.
+     */
+    static void perform(int action, int input, CommandReceiver commandReceiver) {
+        switch (action) {
+            case StreamState.NO_ACTION:
+                return;
+            case StreamState.RECEIVED_DO:
+                commandReceiver.receivedDo(input);
+                return;
+            case StreamState.RECEIVED_DONT:
+                commandReceiver.receivedDont(input);
+                return;
+            case StreamState.RECEIVED_WILL:
+                commandReceiver.receivedWill(input);
+                return;
+            case StreamState.RECEIVED_WONT:
+                commandReceiver.receivedWont(input);
+                return;
+            case StreamState.RECEIVED_START_SUB_NEGOTIATION:
+                commandReceiver.receivedStartSubNegotiation(input);
+                return;
+            case StreamState.RECEIVED_END_SUB_NEGOTIATION:
+                commandReceiver.receivedEndSubNegotiation();
+                return;
+            case StreamState.RECEIVED_COMMAND:
+                commandReceiver.receivedCommand(input);
         }
     }
 
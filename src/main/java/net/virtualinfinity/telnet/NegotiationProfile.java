@@ -0,0 +1,192 @@
+package net.virtualinfinity.telnet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The options a server negotiates with every session, compiled once.  Instead of each new session making the same
+ * {@link OptionHandle#allowLocal()} and {@link OptionHandle#requestRemoteEnable()} calls, which each send their own
+ * command, the profile holds the resulting option states and the initial DO/WILL commands already encoded.  Starting
+ * a session copies the states and sends the commands in a single write.
+ *
+ * A profile is immutable, and may be shared by any number of session starters.
+ *
+ * @see SessionStarters#server(NegotiationProfile)
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class NegotiationProfile {
+    /**
+     * A profile which doesn't allow or request anything.
+     */
+    public static final NegotiationProfile NONE = builder().build();
+
+    private final byte[] optionStates;
+    private final ByteBuffer commands;
+    private final int pendingNegotiations;
+
+    private NegotiationProfile(byte[] optionStates, byte[] commands, int pendingNegotiations) {
+        this.optionStates = optionStates;
+        this.commands = ByteBuffer.wrap(commands).asReadOnlyBuffer();
+        this.pendingNegotiations = pendingNegotiations;
+    }
+
+    /**
+     * @return a builder for a new profile.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the number of bytes of commands sent to each session.
+     */
+    public int length() {
+        return commands.remaining();
+    }
+
+    /**
+     * Replaces the option states of a new session with this profile's states.
+     *
+     * @param states the session's option states.
+     */
+    void copyStatesTo(byte[] states) {
+        System.arraycopy(optionStates, 0, states, 0, optionStates.length);
+    }
+
+    /**
+     * @return the number of requests which are waiting for a reply once the commands have been sent.
+     */
+    int pendingNegotiations() {
+        return pendingNegotiations;
+    }
+
+    /**
+     * @return a view of the encoded commands, which is only read from, so it may be queued directly.
+     */
+    ByteBuffer commands() {
+        return commands.duplicate();
+    }
+
+    /**
+     * Builds a profile by recording the same requests that would be made through the {@link OptionHandle} of each new
+     * session.
+     */
+    public static final class Builder {
+        private final byte[] optionStates = new byte[256];
+        private final ByteArrayOutputStream commands = new ByteArrayOutputStream();
+        private int pendingNegotiations;
+
+        private Builder() {
+        }
+
+        /**
+         * @see OptionHandle#allowLocal()
+         *
+         * @param optionCode the option code.
+         *
+         * @return this builder.
+         */
+        public Builder allowLocal(int optionCode) {
+            OptionState.allow(optionStates, optionCode & 255, OptionState.LOCAL);
+            return this;
+        }
+
+        /**
+         * @see OptionHandle#allowRemote()
+         *
+         * @param optionCode the option code.
+         *
+         * @return this builder.
+         */
+        public Builder allowRemote(int optionCode) {
+            OptionState.allow(optionStates, optionCode & 255, OptionState.REMOTE);
+            return this;
+        }
+
+        /**
+         * @see OptionHandle#requestLocalEnable()
+         *
+         * @param optionCode the option code.
+         *
+         * @return this builder.
+         */
+        public Builder requestLocalEnable(int optionCode) {
+            return request(optionCode, OptionState.LOCAL, TelnetConstants.WILL);
+        }
+
+        /**
+         * @see OptionHandle#requestRemoteEnable()
+         *
+         * @param optionCode the option code.
+         *
+         * @return this builder.
+         */
+        public Builder requestRemoteEnable(int optionCode) {
+            return request(optionCode, OptionState.REMOTE, TelnetConstants.DO);
+        }
+
+        /**
+         * @see #allowLocal(int)
+         *
+         * @param option the option.
+         *
+         * @return this builder.
+         */
+        public Builder allowLocal(HasOptionCode option) {
+            return allowLocal(option.optionCode());
+        }
+
+        /**
+         * @see #allowRemote(int)
+         *
+         * @param option the option.
+         *
+         * @return this builder.
+         */
+        public Builder allowRemote(HasOptionCode option) {
+            return allowRemote(option.optionCode());
+        }
+
+        /**
+         * @see #requestLocalEnable(int)
+         *
+         * @param option the option.
+         *
+         * @return this builder.
+         */
+        public Builder requestLocalEnable(HasOptionCode option) {
+            return requestLocalEnable(option.optionCode());
+        }
+
+        /**
+         * @see #requestRemoteEnable(int)
+         *
+         * @param option the option.
+         *
+         * @return this builder.
+         */
+        public Builder requestRemoteEnable(HasOptionCode option) {
+            return requestRemoteEnable(option.optionCode());
+        }
+
+        private Builder request(int optionCode, int end, byte command) {
+            final int actions = OptionState.update(optionStates, optionCode & 255, end, OptionState.ASK_ENABLE);
+            if ((actions & OptionState.SEND_ENABLE) != 0) {
+                commands.write(TelnetConstants.IAC);
+                commands.write(command);
+                commands.write(optionCode);
+                ++pendingNegotiations;
+            }
+            return this;
+        }
+
+        /**
+         * @return a profile of the requests made so far.  The builder may still be used afterwards.
+         */
+        public NegotiationProfile build() {
+            return new NegotiationProfile(Arrays.copyOf(optionStates, optionStates.length), commands.toByteArray(), pendingNegotiations);
+        }
+    }
+}
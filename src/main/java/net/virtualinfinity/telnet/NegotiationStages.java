@@ -0,0 +1,38 @@
+package net.virtualinfinity.telnet;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Helpers for the stages returned by option negotiation.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+final class NegotiationStages {
+    private NegotiationStages() {
+    }
+
+    /**
+     * @return a stage which completes with the result of the given stage, or exceptionally with a
+     * {@link TimeoutException} once the timeout expires.
+     */
+    static <T> CompletionStage<T> withTimeout(CompletionStage<T> stage, long timeout, TimeUnit unit, ScheduledExecutorService loop) {
+        final CompletableFuture<T> timed = new CompletableFuture<>();
+        stage.whenComplete((result, failure) -> {
+            if (failure != null) {
+                timed.completeExceptionally(failure);
+            } else {
+                timed.complete(result);
+            }
+        });
+        if (!timed.isDone()) {
+            final ScheduledFuture<?> expiry = loop.schedule(() -> timed.completeExceptionally(new TimeoutException("Option negotiation timed out")), timeout, unit);
+            timed.thenRun(() -> expiry.cancel(false));
+        }
+        return timed;
+    }
+}
@@ -0,0 +1,106 @@
+package net.virtualinfinity.telnet;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Runs another listener's callbacks on a shared executor instead of the event loop thread, so a slow listener only
+ * delays its own session.  Callbacks for one session still happen one at a time, in the order the events occurred,
+ * though not always on the same thread.
+ *
+ * The delegate's callbacks are no longer on the event loop thread, so it must not use the {@link Session} directly.
+ * Writes should go through a {@link SessionWriteQueue}, and anything else through the loop's executor.
+ *
+ * Unlike on the event loop thread, the buffer passed to {@link #incomingData(ByteBuffer)} of the delegate belongs to
+ * it, and may be kept.  The received data is copied once, into a buffer of exactly the right size, because the
+ * decoder reuses its own buffer as soon as the callback returns.
+ *
+ * The copies of received data which are waiting for the delegate are limited to a maximum number of bytes.  A session
+ * which goes over the limit is closed, and the delegate's {@link #connectionFailed(IOException)} is called after the
+ * data which was accepted.  Nothing else is delivered after that.
+ *
+ * Option state and sub-negotiation listeners are registered separately, and are still called on the event loop
+ * thread.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class OffloadingSessionListener extends ForwardingSessionListener {
+    private static final Logger logger = Logger.getLogger(OffloadingSessionListener.class);
+
+    private final Executor serial;
+    private final ReceivedDataLimit limit;
+    /**
+     * Only accessed on the event loop thread.
+     */
+    private Session session;
+
+    /**
+     * Creates a listener which allows up to 64K of received data to wait for the delegate.
+     *
+     * @param delegate the listener whose callbacks are offloaded.
+     * @param executor the shared executor to run them on, such as a ForkJoinPool shared by all sessions.
+     */
+    public OffloadingSessionListener(SessionListener delegate, Executor executor) {
+        this(delegate, executor, ReceivedDataLimit.DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param delegate the listener whose callbacks are offloaded.
+     * @param executor the shared executor to run them on, such as a ForkJoinPool shared by all sessions.
+     * @param maxQueuedBytes the number of received bytes which may be waiting for the delegate.
+     */
+    public OffloadingSessionListener(SessionListener delegate, Executor executor, long maxQueuedBytes) {
+        super(delegate);
+        this.limit = new ReceivedDataLimit(maxQueuedBytes);
+        this.serial = new SerialExecutor(executor);
+    }
+
+    /**
+     * @return the number of received bytes which are waiting for the delegate.
+     */
+    public long queuedBytes() {
+        return limit.waitingBytes();
+    }
+
+    @Override
+    void forward(Consumer<SessionListener> event) {
+        if (!limit.overflowed()) {
+            offload(event);
+        }
+    }
+
+    private void offload(Consumer<SessionListener> event) {
+        serial.execute(() -> {
+            try {
+                super.forward(event);
+            } catch (final RuntimeException e) {
+                // Keep delivering the session's later events.
+                logger.error("Session listener failed", e);
+            }
+        });
+    }
+
+    @Override
+    public void incomingData(ByteBuffer data) {
+        final int length = data.remaining();
+        if (!limit.reserve(data, session, failure -> offload(listener -> listener.connectionFailed(failure)))) {
+            return;
+        }
+        final ByteBuffer owned = ByteBuffer.allocate(length);
+        owned.put(data).flip();
+        forward(listener -> {
+            limit.release(length);
+            listener.incomingData(owned);
+        });
+    }
+
+    @Override
+    public void connected(Session session) {
+        this.session = session;
+        super.connected(session);
+    }
+}
@@ -4,51 +4,114 @@ import net.virtualinfinity.telnet.option.OptionStateListener;
 import net.virtualinfinity.telnet.option.SubNegotiationListener;
 import org.apache.log4j.Logger;
 
+import java.net.ProtocolException;
 import java.nio.ByteBuffer;
-import java.util.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
-import java.util.function.Function;
-import java.util.function.ObjIntConsumer;
+import java.util.function.LongSupplier;
 
 /**
  * An implementation of the OptionCommandManager.
  *
+ * The RFC 1143 negotiation can't loop on its own, but a peer can still keep asking us to enable and disable options.
+ * Once we have replied to a session's received option commands {@link #DEFAULT_MAX_NEGOTIATION_REPLIES} times within
+ * {@link #NEGOTIATION_WINDOW_NANOS}, its received option commands are ignored for the rest of that window, and the
+ * negotiations we are waiting on fail with a {@link ProtocolException}, since their answers may be among the ignored
+ * commands.
+ *
  * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
  */
 class OptionCommandManagerImpl implements OptionCommandManager {
     private static final Logger logger = Logger.getLogger(OptionCommandManagerImpl.class);
+    /**
+     * Far more than enough for every option to be negotiated several times.
+     */
+    static final int DEFAULT_MAX_NEGOTIATION_REPLIES = 1024;
+    /**
+     * The period over which replies are counted.
+     */
+    static final long NEGOTIATION_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
     private final Consumer<ByteBuffer> output;
-    private final OptionState[] optionStates = new OptionState[256];
-    private final Map<Integer, List<OptionStateListener>> optionStateListeners = new HashMap<>();
-    private final Map<Integer, SubNegotiationListener> subNegotiationListeners = new HashMap<>();
+    private final int maxNegotiationReplies;
+    private final LongSupplier nanoTime;
+    private long windowStart;
+    private int negotiationReplies;
+    /**
+     * The number of option ends waiting for the other side to reply.
+     */
+    private int pendingNegotiations;
+    /**
+     * The futures of {@link OptionHandle#negotiateLocalEnable()} and {@link OptionHandle#negotiateRemoteEnable()}
+     * which haven't completed yet, created the first time one is needed.
+     */
+    private CompletableFuture<Boolean>[] negotiations;
+    private CompletableFuture<Void> allSettled;
+    /**
+     * The sub-negotiation which is being sent in pieces, if any.
+     */
+    private SubNegotiationWriter openWriter;
+    /**
+     * Option commands and whole sub-negotiations sent while a sub-negotiation is open, which are held until it closes
+     * so they don't become part of it.  Created the first time one is needed.
+     */
+    private ArrayDeque<ByteBuffer> heldOutput;
+    /**
+     * Actions waiting for the open sub-negotiation to close.  Created the first time one is needed.
+     */
+    private ArrayDeque<Runnable> afterWriter;
+    private static final OptionStateListener[] NO_LISTENERS = {};
+    /**
+     * The state of each option, packed by {@link OptionState}.
+     */
+    private final byte[] optionStates = new byte[256];
+    private final OptionStateListener[][] optionStateListeners = new OptionStateListener[256][];
+    private final SubNegotiationListener[] subNegotiationListeners = new SubNegotiationListener[256];
+    private final OptionHandleImpl[] optionHandles = new OptionHandleImpl[256];
 
     OptionCommandManagerImpl(Consumer<ByteBuffer> output) {
+        this(output, DEFAULT_MAX_NEGOTIATION_REPLIES, System::nanoTime);
+    }
+
+    /**
+     * @param output the raw output.
+     * @param maxNegotiationReplies the number of replies allowed within each {@link #NEGOTIATION_WINDOW_NANOS}.
+     * @param nanoTime the clock the window is measured by.
+     */
+    OptionCommandManagerImpl(Consumer<ByteBuffer> output, int maxNegotiationReplies, LongSupplier nanoTime) {
         this.output = output;
+        this.maxNegotiationReplies = maxNegotiationReplies;
+        this.nanoTime = nanoTime;
+        this.windowStart = nanoTime.getAsLong();
+        Arrays.fill(optionStateListeners, NO_LISTENERS);
     }
 
     private void enabledLocally(int optionId) {
-        optionStateListeners.getOrDefault(optionId, Collections.emptyList()).forEach(OptionStateListener::enabledLocally);
-    }
-    private void disabledLocally(int optionId) {
-        optionStateListeners.getOrDefault(optionId, Collections.emptyList()).forEach(OptionStateListener::disabledLocally);
+        for (final OptionStateListener listener : optionStateListeners[optionId & 255]) {
+            listener.enabledLocally();
+        }
     }
 
-    private OptionState optionState(int optionId) {
-        OptionState optionState = optionStates[optionId&255];
-        if (optionState == null) {
-            optionState = new OptionState();
-            optionStates[optionId] = optionState;
+    private void disabledLocally(int optionId) {
+        for (final OptionStateListener listener : optionStateListeners[optionId & 255]) {
+            listener.disabledLocally();
         }
-        return optionState;
     }
 
-
     private void enabledRemotely(int optionId) {
-        optionStateListeners.getOrDefault(optionId, Collections.emptyList()).forEach(OptionStateListener::enabledRemotely);
+        for (final OptionStateListener listener : optionStateListeners[optionId & 255]) {
+            listener.enabledRemotely();
+        }
     }
 
     private void disabledRemotely(int optionId) {
-        optionStateListeners.getOrDefault(optionId, Collections.emptyList()).forEach(OptionStateListener::disabledRemotely);
+        for (final OptionStateListener listener : optionStateListeners[optionId & 255]) {
+            listener.disabledRemotely();
+        }
     }
 
     private void sendDo(int optionId) {
@@ -74,29 +137,196 @@ class OptionCommandManagerImpl implements OptionCommandManager {
     @Override
     public void receivedDo(int optionId) {
         logOptionCommand("Received DO", optionId);
-        optionState(optionId).receivedDo().accept(this, optionId);
+        received(optionId, OptionState.LOCAL, OptionState.RECEIVED_ENABLE);
     }
 
     @Override
     public void receivedDont(int optionId) {
         logOptionCommand("Received DON'T", optionId);
-        optionState(optionId).receivedDont().accept(this, optionId);
+        received(optionId, OptionState.LOCAL, OptionState.RECEIVED_DISABLE);
     }
 
     @Override
     public void receivedWill(int optionId) {
         logOptionCommand("Received WILL", optionId);
-        optionState(optionId).receivedWill().accept(this, optionId);
+        received(optionId, OptionState.REMOTE, OptionState.RECEIVED_ENABLE);
     }
 
     @Override
     public void receivedWont(int optionId) {
         logOptionCommand("Received WON'T", optionId);
-        optionState(optionId).receivedWont().accept(this, optionId);
+        received(optionId, OptionState.REMOTE, OptionState.RECEIVED_DISABLE);
+    }
+
+    private void received(int optionId, int end, int event) {
+        final long now = nanoTime.getAsLong();
+        if (now - windowStart >= NEGOTIATION_WINDOW_NANOS) {
+            windowStart = now;
+            negotiationReplies = 0;
+        }
+        if (negotiationReplies >= maxNegotiationReplies) {
+            if (negotiationReplies == maxNegotiationReplies) {
+                ++negotiationReplies;
+                logger.warn("Ignoring option negotiation after " + maxNegotiationReplies + " replies");
+                cutOff();
+            }
+            return;
+        }
+        if ((updateOptionState(optionId, end, event) & OptionState.SENDS) != 0) {
+            ++negotiationReplies;
+        }
+    }
+
+    /**
+     * Updates the state of one end of an option, performs the resulting actions, and completes the negotiation
+     * futures which are waiting for it to settle.
+     *
+     * @return the actions which were performed.
+     */
+    private int updateOptionState(int optionId, int end, int event) {
+        final boolean wasPending = OptionState.isPending(optionStates, optionId & 255, end);
+        final int actions = OptionState.update(optionStates, optionId & 255, end, event);
+        perform(optionId, end, actions);
+        if (wasPending != OptionState.isPending(optionStates, optionId & 255, end)) {
+            if (wasPending) {
+                --pendingNegotiations;
+                settled(optionId & 255, end);
+            } else {
+                ++pendingNegotiations;
+            }
+        }
+        return actions;
+    }
+
+    private void settled(int optionCode, int end) {
+        if (negotiations != null) {
+            final int index = negotiationIndex(optionCode, end);
+            final CompletableFuture<Boolean> negotiation = negotiations[index];
+            if (negotiation != null) {
+                negotiations[index] = null;
+                negotiation.complete(OptionState.isEnabled(optionStates, optionCode, end));
+            }
+        }
+        if (pendingNegotiations == 0 && allSettled != null) {
+            final CompletableFuture<Void> settled = allSettled;
+            allSettled = null;
+            settled.complete(null);
+        }
+    }
+
+    /**
+     * Fails every negotiation which is waiting on the other side, since its answer may be ignored.
+     */
+    private void cutOff() {
+        final ProtocolException cause = new ProtocolException("Too many option negotiation commands received");
+        if (negotiations != null) {
+            for (int index = 0; index < negotiations.length; ++index) {
+                final CompletableFuture<Boolean> negotiation = negotiations[index];
+                if (negotiation != null) {
+                    negotiations[index] = null;
+                    negotiation.completeExceptionally(cause);
+                }
+            }
+        }
+        if (allSettled != null) {
+            final CompletableFuture<Void> settled = allSettled;
+            allSettled = null;
+            settled.completeExceptionally(cause);
+        }
+    }
+
+    private static int negotiationIndex(int optionCode, int end) {
+        return end == OptionState.LOCAL ? optionCode : 256 + optionCode;
+    }
+
+    private CompletionStage<Boolean> negotiateEnable(int optionCode, int end) {
+        updateOptionState(optionCode, end, OptionState.ASK_ENABLE);
+        if (!OptionState.isPending(optionStates, optionCode, end)) {
+            return CompletableFuture.completedFuture(OptionState.isEnabled(optionStates, optionCode, end));
+        }
+        if (negotiations == null) {
+            @SuppressWarnings("unchecked")
+            final CompletableFuture<Boolean>[] created = (CompletableFuture<Boolean>[]) new CompletableFuture<?>[512];
+            negotiations = created;
+        }
+        final int index = negotiationIndex(optionCode, end);
+        if (negotiations[index] == null) {
+            negotiations[index] = new CompletableFuture<>();
+        }
+        return negotiations[index];
+    }
+
+    private CompletionStage<Void> negotiationSettled() {
+        if (pendingNegotiations == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (allSettled == null) {
+            allSettled = new CompletableFuture<>();
+        }
+        return allSettled;
+    }
+
+    private void perform(int optionId, int end, int actions) {
+        final boolean local = end == OptionState.LOCAL;
+        if ((actions & OptionState.SEND_ENABLE) != 0) {
+            if (local) {
+                sendWill(optionId);
+            } else {
+                sendDo(optionId);
+            }
+        }
+        if ((actions & OptionState.SEND_DISABLE) != 0) {
+            if (local) {
+                sendWont(optionId);
+            } else {
+                sendDont(optionId);
+            }
+        }
+        if ((actions & OptionState.NOTIFY_ENABLED) != 0) {
+            if (local) {
+                enabledLocally(optionId);
+            } else {
+                enabledRemotely(optionId);
+            }
+        }
+        if ((actions & OptionState.NOTIFY_DISABLED) != 0) {
+            if (local) {
+                disabledLocally(optionId);
+            } else {
+                disabledRemotely(optionId);
+            }
+        }
     }
 
     private void sendOptionCommand(byte command, byte optionId) {
-        output.accept(ByteBuffer.wrap(new byte[]{TelnetConstants.IAC, command, optionId}));
+        sendOrHold(ByteBuffer.wrap(new byte[]{TelnetConstants.IAC, command, optionId}));
+    }
+
+    /**
+     * Sends a complete command or sub-negotiation, unless a sub-negotiation is open, in which case it's held.
+     */
+    private void sendOrHold(ByteBuffer buffer) {
+        if (openWriter == null) {
+            output.accept(buffer);
+            return;
+        }
+        if (heldOutput == null) {
+            heldOutput = new ArrayDeque<>();
+        }
+        heldOutput.addLast(buffer);
+    }
+
+    private void writerClosed() {
+        openWriter = null;
+        if (heldOutput != null) {
+            while (!heldOutput.isEmpty()) {
+                output.accept(heldOutput.removeFirst());
+            }
+        }
+        // An action may open another writer, which the rest then wait for.
+        while (openWriter == null && afterWriter != null && !afterWriter.isEmpty()) {
+            afterWriter.removeFirst().run();
+        }
     }
 
     private void logOptionCommand(String command, int optionId) {
@@ -108,202 +338,251 @@ class OptionCommandManagerImpl implements OptionCommandManager {
 
     @Override
     public SubNegotiationListener getSubNegotiationListener(int optionId) {
-        return subNegotiationListeners.get(optionId);
+        return subNegotiationListeners[optionId & 255];
     }
 
-    SubNegotiationOutputChannel subNegotiationOutputChannel(OutputChannel outputChannel) {
-        return new SubNegotiationOutputChannelImpl(this, outputChannel);
-
+    SubNegotiationOutputChannel subNegotiationOutputChannel(BooleanSupplier writability) {
+        return new SubNegotiationOutputChannelImpl(writability);
     }
 
-    private OptionState optionState(HasOptionCode option) {
-        return optionState(option.optionCode());
+    private void allowRemote(int optionCode) {
+        OptionState.allow(optionStates, optionCode & 255, OptionState.REMOTE);
     }
 
-    private void allowRemote(HasOptionCode option) {
-        optionState(option).allowRemote();
+    private void allowLocal(int optionCode) {
+        OptionState.allow(optionStates, optionCode & 255, OptionState.LOCAL);
     }
 
-    private void allowLocal(HasOptionCode option) {
-        optionState(option).allowLocal();
+    /**
+     * Starts negotiation from the given profile.  This must be called before any negotiation has happened, since it
+     * replaces the state of every option.
+     *
+     * @param profile the profile.
+     */
+    void apply(NegotiationProfile profile) {
+        profile.copyStatesTo(optionStates);
+        pendingNegotiations = profile.pendingNegotiations();
+        if (profile.length() > 0) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Sent negotiation profile (" + profile.length() + " bytes)");
+            }
+            output.accept(profile.commands());
+        }
     }
 
+    /**
+     * There is a single handle for each option code, which is created the first time it's asked for.
+     *
+     * @return the options.
+     */
     Options options() {
         return new Options() {
             @Override
             public OptionHandle option(HasOptionCode hasOptionCode) {
-                return new OptionHandleImpl(hasOptionCode, OptionCommandManagerImpl.this);
+                return option(hasOptionCode.optionCode());
             }
 
             @Override
             public OptionHandle option(int optionCode) {
-                return option(() -> optionCode);
+                OptionHandleImpl handle = optionHandles[optionCode & 255];
+                if (handle == null) {
+                    handle = new OptionHandleImpl(optionCode & 255, OptionCommandManagerImpl.this);
+                    optionHandles[optionCode & 255] = handle;
+                }
+                return handle;
             }
 
+            @Override
+            public CompletionStage<Void> negotiationSettled() {
+                return OptionCommandManagerImpl.this.negotiationSettled();
+            }
         };
     }
 
-    private void updateOptionState(HasOptionCode option, Function<OptionState, ObjIntConsumer<OptionCommandManagerImpl>> command) {
-        command.apply(optionState(option.optionCode())).accept(this, option.optionCode());
+    private void requestRemoteEnable(int optionCode) {
+        updateOptionState(optionCode, OptionState.REMOTE, OptionState.ASK_ENABLE);
     }
-    private void requestRemoteEnable(HasOptionCode option) {
-        updateOptionState(option, OptionState::enableRemote);
+
+    private void requestLocalEnable(int optionCode) {
+        updateOptionState(optionCode, OptionState.LOCAL, OptionState.ASK_ENABLE);
     }
 
-    private void requestLocalEnable(HasOptionCode option) {
-        updateOptionState(option, OptionState::enableLocal);
+    private void requestRemoteDisable(int optionCode) {
+        updateOptionState(optionCode, OptionState.REMOTE, OptionState.ASK_DISABLE);
     }
 
-    private void requestRemoteDisable(HasOptionCode option) {
-        updateOptionState(option, OptionState::disableRemote);
+    private void requestLocalDisable(int optionCode) {
+        updateOptionState(optionCode, OptionState.LOCAL, OptionState.ASK_DISABLE);
     }
 
-    private void requestLocalDisable(HasOptionCode option) {
-        updateOptionState(option, OptionState::disableLocal);
+    private boolean isEnabledRemotely(int optionCode) {
+        return OptionState.isEnabled(optionStates, optionCode & 255, OptionState.REMOTE);
     }
 
-    private boolean isEnabledRemotely(HasOptionCode option) {
-        return optionState(option).isEnabledRemotely();
+    private boolean isEnabledLocally(int optionCode) {
+        return OptionState.isEnabled(optionStates, optionCode & 255, OptionState.LOCAL);
     }
 
-    private boolean isEnabledLocally(HasOptionCode option) {
-        return optionState(option).isEnabledLocally();
+    /**
+     * Listeners are kept in arrays which are replaced rather than modified, so a listener may add or remove listeners
+     * while being notified.
+     */
+    private void addStateListener(int optionCode, OptionStateListener listener) {
+        final OptionStateListener[] listeners = optionStateListeners[optionCode];
+        final OptionStateListener[] added = Arrays.copyOf(listeners, listeners.length + 1);
+        added[listeners.length] = listener;
+        optionStateListeners[optionCode] = added;
     }
 
-    private Collection<OptionStateListener> stateListenerList(int optionCode) {
-        return optionStateListeners.computeIfAbsent(optionCode, integer -> new ArrayList<>());
+    private void removeStateListener(int optionCode, OptionStateListener listener) {
+        final OptionStateListener[] listeners = optionStateListeners[optionCode];
+        for (int index = 0; index < listeners.length; ++index) {
+            if (listeners[index].equals(listener)) {
+                final OptionStateListener[] removed = Arrays.copyOf(listeners, listeners.length - 1);
+                System.arraycopy(listeners, index + 1, removed, index, removed.length - index);
+                optionStateListeners[optionCode] = removed;
+                return;
+            }
+        }
     }
 
     private static class OptionHandleImpl implements OptionHandle {
 
-        private final HasOptionCode option;
+        private final int optionCode;
         private final OptionCommandManagerImpl optionManager;
-        private OptionHandleImpl(HasOptionCode option, OptionCommandManagerImpl OptionManagerImpl) {
-            this.option = option;
+        private OptionHandleImpl(int optionCode, OptionCommandManagerImpl OptionManagerImpl) {
+            this.optionCode = optionCode;
             this.optionManager = OptionManagerImpl;
         }
 
         @Override
         public boolean isEnabledRemotely() {
-            return optionManager.isEnabledRemotely(option);
+            return optionManager.isEnabledRemotely(optionCode);
         }
 
         @Override
         public boolean isEnabledLocally() {
-            return optionManager.isEnabledLocally(option);
+            return optionManager.isEnabledLocally(optionCode);
         }
 
         @Override
         public OptionHandle requestRemoteEnable() {
-            optionManager.requestRemoteEnable(option);
+            optionManager.requestRemoteEnable(optionCode);
 
             return this;
         }
 
         @Override
         public OptionHandle requestLocalEnable() {
-            optionManager.requestLocalEnable(option);
+            optionManager.requestLocalEnable(optionCode);
 
             return this;
         }
 
         @Override
         public OptionHandle requestRemoteDisable() {
-            optionManager.requestRemoteDisable(option);
+            optionManager.requestRemoteDisable(optionCode);
 
             return this;
         }
 
         @Override
         public OptionHandle requestLocalDisable() {
-            optionManager.requestLocalDisable(option);
+            optionManager.requestLocalDisable(optionCode);
 
             return this;
         }
 
+        @Override
+        public CompletionStage<Boolean> negotiateRemoteEnable() {
+            return optionManager.negotiateEnable(optionCode, OptionState.REMOTE);
+        }
+
+        @Override
+        public CompletionStage<Boolean> negotiateLocalEnable() {
+            return optionManager.negotiateEnable(optionCode, OptionState.LOCAL);
+        }
+
         @Override
         public OptionHandle allowLocal() {
-            optionManager.allowLocal(option);
+            optionManager.allowLocal(optionCode);
 
             return this;
         }
 
         @Override
         public OptionHandle allowRemote() {
-            optionManager.allowRemote(option);
+            optionManager.allowRemote(optionCode);
 
             return this;
         }
 
         @Override
         public OptionHandle addStateListener(OptionStateListener optionStateListener) {
-            optionManager.stateListenerList(optionCode()).add(optionStateListener);
+            optionManager.addStateListener(optionCode, optionStateListener);
             return this;
         }
 
         @Override
         public OptionHandle removeStateListener(OptionStateListener optionStateListener) {
-            optionManager.stateListenerList(optionCode()).remove(optionStateListener);
+            optionManager.removeStateListener(optionCode, optionStateListener);
             return this;
         }
 
         @Override
         public OptionHandle setSubNegotiationListener(SubNegotiationListener subNegotiationListener) {
-            optionManager.subNegotiationListeners.put(optionCode(), subNegotiationListener);
+            optionManager.subNegotiationListeners[optionCode] = subNegotiationListener;
             return this;
         }
 
         @Override
         public int optionCode() {
-            return option.optionCode();
+            return optionCode;
         }
     }
 
-    enum Response implements ObjIntConsumer<OptionCommandManagerImpl> {
-        SEND_WONT(OptionCommandManagerImpl::sendWont),
-        IS_ENABLED_LOCALLY(OptionCommandManagerImpl::enabledLocally),
-        IS_DISABLED_LOCALLY(OptionCommandManagerImpl::disabledLocally),
-        NO_RESPONSE((OptionManagerImpl, value) -> {}),
-        SEND_DO(OptionCommandManagerImpl::sendDo),
-        IS_ENABLED_REMOTELY(OptionCommandManagerImpl::enabledRemotely),
-        IS_DISABLED_REMOTELY(OptionCommandManagerImpl::disabledRemotely),
-        SEND_DONT(OptionCommandManagerImpl::sendDont),
-        SEND_WILL(OptionCommandManagerImpl::sendWill),
-        ;
-
-        private final ObjIntConsumer<OptionCommandManagerImpl> responder;
+    /**
+     * While a {@link SubNegotiationWriter} is open, no other writer may be opened.  Option commands and framed
+     * sub-negotiations, including the ones which options send in reply to the peer, are held until it's closed.
+     */
+    private final class SubNegotiationOutputChannelImpl implements SubNegotiationOutputChannel {
+        private final BooleanSupplier writability;
+        private final SubNegotiationFrameBuilder frameBuilder;
 
-        Response(ObjIntConsumer<OptionCommandManagerImpl> responder) {
-            this.responder = responder;
+        public SubNegotiationOutputChannelImpl(BooleanSupplier writability) {
+            this.writability = writability;
+            this.frameBuilder = new SubNegotiationFrameBuilder(OptionCommandManagerImpl.this::sendOrHold);
         }
 
-        public void accept(OptionCommandManagerImpl OptionManagerImpl, int optionId) {
-            responder.accept(OptionManagerImpl, optionId);
+        @Override
+        public void sendSubNegotiation(int optionId, ByteBuffer data) {
+            frame(optionId).put(data).send();
         }
 
-        public ObjIntConsumer<OptionCommandManagerImpl> and(ObjIntConsumer<OptionCommandManagerImpl> otherResponse) {
-            return (OptionManagerImpl, value) -> {
-                accept(OptionManagerImpl, value);
-                otherResponse.accept(OptionManagerImpl, value);
-            };
+        @Override
+        public SubNegotiationFrameBuilder frame(int optionId) {
+            return frameBuilder.start(optionId);
         }
-    }
-
-
-    private final class SubNegotiationOutputChannelImpl implements SubNegotiationOutputChannel {
-        private final OptionCommandManagerImpl optionCommandManagerImpl;
-        private final OutputChannel outputChannel;
 
-        public SubNegotiationOutputChannelImpl(OptionCommandManagerImpl optionCommandManagerImpl, OutputChannel outputChannel) {
-            this.optionCommandManagerImpl = optionCommandManagerImpl;
-            this.outputChannel = outputChannel;
+        @Override
+        public SubNegotiationWriter open(int optionId) {
+            if (openWriter != null) {
+                throw new IllegalStateException("A sub-negotiation writer is already open");
+            }
+            openWriter = new SubNegotiationWriter(output, writability, optionId, OptionCommandManagerImpl.this::writerClosed);
+            return openWriter;
         }
 
         @Override
-        public void sendSubNegotiation(int optionId, ByteBuffer data) {
-            optionCommandManagerImpl.sendOptionCommand(TelnetConstants.SB, (byte) optionId);
-            outputChannel.write(data);
-            optionCommandManagerImpl.output.accept(ByteBuffer.wrap(new byte[]{TelnetConstants.IAC, TelnetConstants.SE}));
+        public void afterOpenWriter(Runnable action) {
+            if (openWriter == null) {
+                action.run();
+                return;
+            }
+            if (afterWriter == null) {
+                afterWriter = new ArrayDeque<>();
+            }
+            afterWriter.addLast(action);
         }
     }
 }
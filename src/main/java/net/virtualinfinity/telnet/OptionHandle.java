@@ -3,6 +3,10 @@ package net.virtualinfinity.telnet;
 import net.virtualinfinity.telnet.option.OptionStateListener;
 import net.virtualinfinity.telnet.option.SubNegotiationListener;
 
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Provides an interface to a single telnet option.
  *
@@ -35,6 +39,58 @@ public interface OptionHandle extends HasOptionCode {
      */
     OptionHandle requestLocalEnable();
 
+    /**
+     * Requests that the remote side enables this option on their side, like {@link #requestRemoteEnable()}, and
+     * returns a stage which completes once they've agreed or refused.
+     *
+     * The stage is completed on the session's event loop thread, and is shared by every caller waiting on the same
+     * negotiation.  It completes exceptionally with a {@link java.net.ProtocolException} if the remote side sends
+     * so many option commands that the session stops listening to them.
+     *
+     * @return a stage which completes with whether the option is enabled remotely.  If nothing needs to be
+     * negotiated, it is already complete.
+     */
+    CompletionStage<Boolean> negotiateRemoteEnable();
+
+    /**
+     * Like {@link #negotiateRemoteEnable()}, but completes exceptionally with a
+     * {@link java.util.concurrent.TimeoutException} if the remote side hasn't replied before the timeout expires.  A
+     * later reply still updates the state of the option.
+     *
+     * @param timeout the longest time to wait.
+     * @param unit the unit of the timeout.
+     * @param loop schedules the timeout.  It should run its tasks on the session's event loop thread.
+     *
+     * @return a stage which completes with whether the option is enabled remotely.
+     */
+    default CompletionStage<Boolean> negotiateRemoteEnable(long timeout, TimeUnit unit, ScheduledExecutorService loop) {
+        return NegotiationStages.withTimeout(negotiateRemoteEnable(), timeout, unit, loop);
+    }
+
+    /**
+     * Offers to enable this option on our side, like {@link #requestLocalEnable()}, and returns a stage which
+     * completes once the remote side has agreed or refused.
+     *
+     * @return a stage which completes with whether the option is enabled locally.
+     *
+     * @see #negotiateRemoteEnable()
+     */
+    CompletionStage<Boolean> negotiateLocalEnable();
+
+    /**
+     * Like {@link #negotiateLocalEnable()}, but completes exceptionally with a
+     * {@link java.util.concurrent.TimeoutException} if the remote side hasn't replied before the timeout expires.
+     *
+     * @param timeout the longest time to wait.
+     * @param unit the unit of the timeout.
+     * @param loop schedules the timeout.  It should run its tasks on the session's event loop thread.
+     *
+     * @return a stage which completes with whether the option is enabled locally.
+     */
+    default CompletionStage<Boolean> negotiateLocalEnable(long timeout, TimeUnit unit, ScheduledExecutorService loop) {
+        return NegotiationStages.withTimeout(negotiateLocalEnable(), timeout, unit, loop);
+    }
+
     /**
      * Tell the remote end that we no longer want this option enabled on their side.
      *
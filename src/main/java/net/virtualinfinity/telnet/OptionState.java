@@ -1,318 +1,231 @@
 package net.virtualinfinity.telnet;
 
-import java.util.function.Function;
-import java.util.function.ObjIntConsumer;
-
 /**
- * Manages the state of an option.
+ * Manages the state of options, using the "Q method" of RFC 1143, which guarantees that negotiation can't loop.
+ *
+ * The state of each option is packed into a single byte, so a session only needs a {@code byte[256]} for all of its
+ * options.  The low four bits are the state of the local end ("us" in the RFC), and the high four bits are the state
+ * of the remote end ("him").  Each end has a two bit state, a queue bit, and whether we agree to enable the option
+ * when asked.
+ *
+ * The transitions are precomputed into a table of new states and actions, so negotiating doesn't allocate.
  *
  * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
  */
-class OptionState {
+final class OptionState {
     /**
-     * The state at one end of the connection.
+     * The end which is enabled by DO and WILL, disabled by DON'T and WON'T.
      */
-    private static class EndState
-    {
-        /**
-         * Remote sent "DO" or "WILL"
-         */
-        private boolean remoteWants;
-
-        /**
-         * Local replied "DO" or "WILL
-         */
-        private boolean localWants;
-
-        /**
-         * Actual state of option.
-         */
-        private boolean enabled;
-
-        /**
-         * Respond affirmatively if asked.
-         */
-        private boolean supported;
-
-        /**
-         * @return true if both sides agree to enable the feature.
-         */
-        public boolean isEnabled() {
-            return enabled;
-        }
-
-        public void remoteWants() {
-            remoteWants = true;
-        }
-
-        public void localWants() {
-            this.localWants = true;
-        }
-
-        public boolean isSupported() {
-            return supported;
-        }
-
-        public EndState allow() {
-            this.supported = true;
-            return this;
-        }
-
-    }
+    static final int LOCAL = 0;
 
     /**
-     * The responses to send in the case of a state change.
+     * The end which is enabled by WILL and DO, disabled by WON'T and DON'T.
      */
-    private static class Responses {
-        private final Function<OptionState, EndState> endGetter;
-        private final OptionCommandManagerImpl.Response requestDisable;
-        private final ObjIntConsumer<OptionCommandManagerImpl> enabled;
-        private final ObjIntConsumer<OptionCommandManagerImpl> disabled;
-        private final ObjIntConsumer<OptionCommandManagerImpl> requestEnable;
-
-        /**
-         *
-         * @param endGetter Supplier of the "end" this is for.
-         * @param requestDisable The response that causes us to send a disable request (WON'T, DON'T).
-         * @param requestEnable The response that causes us to send an enable request (WILL, DO)
-         * @param enabled The response that causes us to dispatch an "Enabled" event to the appropriate listeners.
-         * @param disabled The response that causes us to dispatch an "Disabled" event to the appropriate listeners.
-         */
-        public Responses(Function<OptionState, EndState> endGetter, OptionCommandManagerImpl.Response requestDisable, ObjIntConsumer<OptionCommandManagerImpl> requestEnable, ObjIntConsumer<OptionCommandManagerImpl> enabled, ObjIntConsumer<OptionCommandManagerImpl> disabled) {
-            this.endGetter = endGetter;
-            this.requestDisable = requestDisable;
-            this.requestEnable = requestEnable;
-            this.enabled = enabled;
-            this.disabled = disabled;
-        }
-
-        /**
-         * Returns the action that should be performed when the remote disables the given option.
-         *
-         * @param state the option state.
-         *
-         * @return the action to perform.
-         */
-        public ObjIntConsumer<OptionCommandManagerImpl> remoteDisables(OptionState state) {
-            final EndState end = endGetter.apply(state);
-            end.remoteWants = false;
-            if (end.isEnabled()) {
-                if (end.localWants) {
-                    return requestDisable.and(disabled(end));
-                } else {
-                    return disabled(end);
-                }
-            }
-            return OptionCommandManagerImpl.Response.NO_RESPONSE;
-        }
-
-        /**
-         * Returns the action that should be performed when the local side disables the given option.
-         *
-         * @param state the option state.
-         *
-         * @return the action to perform.
-         */
-        public ObjIntConsumer<OptionCommandManagerImpl> localDisables(OptionState state) {
-            final EndState end = endGetter.apply(state);
-            end.localWants = false;
-            if (end.remoteWants) {
-                return requestDisable;
-            }
-            return disabled(end);
-        }
-
-        /**
-         * Returns the action that should be performed when the option is disabled.
-         *
-         * @param end the option end that this applies to.
-         *
-         * @return the action to perform.
-         */
-        public ObjIntConsumer<OptionCommandManagerImpl> disabled(EndState end) {
-            end.enabled = false;
-            return disabled;
-        }
-
-        /**
-         * Returns the action that should be performed when the local side requests the given option.
-         *
-         * @param state the option state.
-         *
-         * @return the action to perform.
-         */
-        public ObjIntConsumer<OptionCommandManagerImpl> localWants(OptionState state) {
-            final EndState end = endGetter.apply(state);
-            end.allow(); // Force allowed, since we're advertising it.
-            end.localWants();
-            if (end.remoteWants) {
-                return enabled(end);
-            }
-            return requestEnable;
-        }
-
-        /**
-         * Returns the action that should be performed when the option is enabled.
-         *
-         * @param end the option end that this applies to.
-         *
-         * @return the action to perform.
-         */
-        public ObjIntConsumer<OptionCommandManagerImpl> enabled(EndState end) {
-            end.enabled = true;
-            return enabled;
-        }
-
-        /**
-         * Returns the action that should be performed when the remote side wants the given option.
-         *
-         * @param state the option state.
-         *
-         * @return the action to perform.
-         */
-        public ObjIntConsumer<OptionCommandManagerImpl> remoteWants(OptionState state) {
-            final EndState end = endGetter.apply(state);
-            if (!end.isSupported()) {
-                return requestDisable;
-            }
-            end.remoteWants();
-            if (end.localWants) {
-                if (end.isEnabled()) {
-                    return OptionCommandManagerImpl.Response.NO_RESPONSE; // no change.
-                }
-                return enabled(end);
-            }
-            return requestEnable;
-        }
-    }
+    static final int REMOTE = 4;
 
     /**
-     * Responses to requests for local options.
+     * The other side sent DO or WILL.
      */
-    private static final Responses localResponse =
-        new Responses(OptionState::local, OptionCommandManagerImpl.Response.SEND_WONT, OptionCommandManagerImpl.Response.SEND_WILL,
-            OptionCommandManagerImpl.Response.IS_ENABLED_LOCALLY, OptionCommandManagerImpl.Response.IS_DISABLED_LOCALLY);
+    static final int RECEIVED_ENABLE = 0;
 
     /**
-     * Responses to requests for remote options.
+     * The other side sent DON'T or WON'T.
      */
-    private static final Responses remoteResponse =
-        new Responses(OptionState::remote, OptionCommandManagerImpl.Response.SEND_DONT, OptionCommandManagerImpl.Response.SEND_DO,
-            OptionCommandManagerImpl.Response.IS_ENABLED_REMOTELY, OptionCommandManagerImpl.Response.IS_DISABLED_REMOTELY);
+    static final int RECEIVED_DISABLE = 1;
 
     /**
-     * The state of the option on the remote end.
+     * We want the option enabled.
      */
-    private final EndState remote = new EndState();
+    static final int ASK_ENABLE = 2;
 
     /**
-     * The state of the option on the local end.
+     * We want the option disabled.
      */
-    private final EndState local = new EndState();
-
-    public EndState remote() {
-        return remote;
-    }
-
-    public EndState local() {
-        return local;
-    }
+    static final int ASK_DISABLE = 3;
 
     /**
-     * @return the action to perform when we receive a DO.
+     * The other side sent DO or WILL for an option which we don't agree to.
      */
-    public ObjIntConsumer<OptionCommandManagerImpl> receivedDo() {
-        return localResponse.remoteWants(this);
-    }
+    private static final int RECEIVED_UNSUPPORTED_ENABLE = 4;
+
+    private static final int EVENTS = 5;
 
     /**
-     * @return the action to perform when we receive a WILL.
+     * Send WILL or DO.
      */
-    public ObjIntConsumer<OptionCommandManagerImpl> receivedWill() {
-        return remoteResponse.remoteWants(this);
-    }
+    static final int SEND_ENABLE = 8;
 
     /**
-     * @return the action to perform when we receive a DON'T.
+     * Send WON'T or DON'T.
      */
-    public ObjIntConsumer<OptionCommandManagerImpl> receivedDont() {
-        return localResponse.remoteDisables(this);
-    }
+    static final int SEND_DISABLE = 16;
 
     /**
-     * @return the action to perform when we receive a WON'T.
+     * Dispatch an "enabled" event to the appropriate listeners.
      */
-    public ObjIntConsumer<OptionCommandManagerImpl> receivedWont() {
-        return remoteResponse.remoteDisables(this);
-    }
+    static final int NOTIFY_ENABLED = 32;
 
     /**
-     * @return the action to perform when we want to enable the option locally.
+     * Dispatch a "disabled" event to the appropriate listeners.
      */
-    public ObjIntConsumer<OptionCommandManagerImpl> enableLocal() {
-        return localResponse.localWants(this);
-    }
+    static final int NOTIFY_DISABLED = 64;
+
+    static final int SENDS = SEND_ENABLE | SEND_DISABLE;
+
+    private static final int NO = 0;
+    private static final int YES = 1;
+    private static final int WANT_NO = 2;
+    private static final int WANT_YES = 3;
+    private static final int STATE = 3;
+    private static final int OPPOSITE = 4;
+    private static final int QUEUED_STATE = STATE | OPPOSITE;
+    private static final int SUPPORTED = 8;
+
+    private static final String[] STATE_NAMES = {"NO", "YES", "WANTNO", "WANTYES"};
 
     /**
-     * @return the action to perform when we want to enable the option remotely.
+     * The new queued state in the low three bits, and the actions in the rest, indexed by event and queued state.
      */
-    public ObjIntConsumer<OptionCommandManagerImpl> enableRemote() {
-        return remoteResponse.localWants(this);
+    private static final byte[] TRANSITIONS = new byte[EVENTS * (QUEUED_STATE + 1)];
+
+    static {
+        for (int event = 0; event < EVENTS; ++event) {
+            for (int state = 0; state <= QUEUED_STATE; ++state) {
+                final int transition = transition(event, state);
+                final int newState = transition & QUEUED_STATE;
+                int actions = transition & SENDS;
+                if ((state & STATE) != YES && (newState & STATE) == YES) {
+                    actions |= NOTIFY_ENABLED;
+                } else if ((state & STATE) == YES && (newState & STATE) != YES) {
+                    actions |= NOTIFY_DISABLED;
+                }
+                TRANSITIONS[event * (QUEUED_STATE + 1) + state] = (byte) (newState | actions);
+            }
+        }
     }
 
-    /**
-     * @return the action to perform when we want to disable the option locally.
-     */
-    public ObjIntConsumer<OptionCommandManagerImpl> disableLocal() {
-        return localResponse.localDisables(this);
+    private OptionState() {
+    }
+
+    /**
+     * The transitions of RFC 1143, section 7.  Errors are resolved in the way the RFC describes, and requests which
+     * are already satisfied or queued are ignored.
+     *
+     * @return the new queued state, and which commands to send.
+     */
+    private static int transition(int event, int state) {
+        switch (event) {
+            case RECEIVED_ENABLE:
+            case RECEIVED_UNSUPPORTED_ENABLE:
+                switch (state) {
+                    case NO:
+                        return event == RECEIVED_ENABLE ? YES | SEND_ENABLE : NO | SEND_DISABLE;
+                    case WANT_NO:
+                        return NO; // DON'T answered by WILL.
+                    case WANT_NO | OPPOSITE:
+                        return YES; // DON'T answered by WILL.
+                    case WANT_YES:
+                        return YES;
+                    case WANT_YES | OPPOSITE:
+                        return WANT_NO | SEND_DISABLE;
+                    default:
+                        return state;
+                }
+            case RECEIVED_DISABLE:
+                switch (state) {
+                    case YES:
+                        return NO | SEND_DISABLE;
+                    case WANT_NO:
+                        return NO;
+                    case WANT_NO | OPPOSITE:
+                        return WANT_YES | SEND_ENABLE;
+                    case WANT_YES:
+                    case WANT_YES | OPPOSITE:
+                        return NO;
+                    default:
+                        return state;
+                }
+            case ASK_ENABLE:
+                switch (state) {
+                    case NO:
+                        return WANT_YES | SEND_ENABLE;
+                    case WANT_NO:
+                        return WANT_NO | OPPOSITE;
+                    case WANT_YES | OPPOSITE:
+                        return WANT_YES;
+                    default:
+                        return state;
+                }
+            case ASK_DISABLE:
+                switch (state) {
+                    case YES:
+                        return WANT_NO | SEND_DISABLE;
+                    case WANT_NO | OPPOSITE:
+                        return WANT_NO;
+                    case WANT_YES:
+                        return WANT_YES | OPPOSITE;
+                    default:
+                        return state;
+                }
+            default:
+                throw new IllegalArgumentException("Unknown event " + event);
+        }
     }
 
     /**
-     * @return the action to perform when we want to enable the option remotely.
+     * Updates the state of one end of an option.
+     *
+     * @param states the option states.
+     * @param optionId the option.
+     * @param end {@link #LOCAL} or {@link #REMOTE}.
+     * @param event {@link #RECEIVED_ENABLE}, {@link #RECEIVED_DISABLE}, {@link #ASK_ENABLE} or {@link #ASK_DISABLE}.
+     *
+     * @return the actions to perform, some of {@link #SEND_ENABLE}, {@link #SEND_DISABLE}, {@link #NOTIFY_ENABLED}
+     * and {@link #NOTIFY_DISABLED}.
      */
-    public ObjIntConsumer<OptionCommandManagerImpl> disableRemote() {
-        return remoteResponse.localDisables(this);
+    static int update(byte[] states, int optionId, int end, int event) {
+        int endState = states[optionId] >> end & 15;
+        if (event == ASK_ENABLE) {
+            endState |= SUPPORTED; // Force allowed, since we're advertising it.
+        } else if (event == RECEIVED_ENABLE && (endState & SUPPORTED) == 0) {
+            event = RECEIVED_UNSUPPORTED_ENABLE;
+        }
+        final int transition = TRANSITIONS[event * (QUEUED_STATE + 1) + (endState & QUEUED_STATE)];
+        endState = endState & SUPPORTED | transition & QUEUED_STATE;
+        states[optionId] = (byte) (states[optionId] & ~(15 << end) | endState << end);
+        return transition & ~QUEUED_STATE;
     }
 
     /**
-     * Mark the remote option as being allowed. Future suggestions by the remote side that they enable the option will
-     * be responded with positively.
+     * Mark one end of the option as being allowed. Future suggestions by the remote side that the option be enabled
+     * on that end will be responded with positively.
      */
-    public void allowRemote() {
-        remote().allow();
+    static void allow(byte[] states, int optionId, int end) {
+        states[optionId] |= SUPPORTED << end;
     }
 
     /**
-     * Mark the local option as being allowed. Future suggestions by the remote side that we enable the option will
-     * be responded with positively.
+     * @return true if there is agreement that this option is enabled on the given end.
      */
-    public void allowLocal() {
-        local().allow();
+    static boolean isEnabled(byte[] states, int optionId, int end) {
+        return (states[optionId] >> end & STATE) == YES;
     }
 
     /**
-     * @return true if there is agreement that this option is enabled on the remote side.
+     * @return true if we are waiting for the other side to reply about the given end.
      */
-    public boolean isEnabledRemotely() {
-        return remote().isEnabled();
+    static boolean isPending(byte[] states, int optionId, int end) {
+        return (states[optionId] >> end & WANT_NO) != 0;
     }
 
     /**
-     * @return true if there is agreement that this option is enabled on the local side.
+     * @return a description of the state of an option, for debugging.
      */
-    public boolean isEnabledLocally() {
-        return local().isEnabled();
+    static String toString(byte[] states, int optionId) {
+        return "{remote=" + toString(states[optionId] >> REMOTE & 15) + ",local=" + toString(states[optionId] >> LOCAL & 15) + "}";
     }
 
-    @Override
-    public String toString() {
-        final StringBuilder builder = new StringBuilder("{");
-        builder.append(remote().localWants ? "DO" : "DON'T").append("->");
-        builder.append(remote().remoteWants ? "WILL" : "WON'T");
-        builder.append(",");
-        builder.append(local().remoteWants ? "WILL" : "WON'T").append("->");
-        builder.append(local().localWants ? "DO" : "DON'T");
-
-        return builder.append("}").toString();
+    private static String toString(int endState) {
+        return STATE_NAMES[endState & STATE] + ((endState & OPPOSITE) != 0 ? "/OPPOSITE" : "");
     }
 }
@@ -1,5 +1,9 @@
 package net.virtualinfinity.telnet;
 
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Provides access to option handles by option code.
  *
@@ -23,4 +27,31 @@ public interface Options {
      * @return the option handle.
      */
     OptionHandle option(int optionCode);
+
+    /**
+     * Returns a stage which completes once no option negotiation is waiting for a reply from the other side.  For
+     * example, a server which has requested NAWS, TTYPE and ECHO can start rendering as soon as the client has
+     * answered all of them.
+     *
+     * The stage is completed on the session's event loop thread, so dependent actions should be quick.  It completes
+     * exceptionally with a {@link java.net.ProtocolException} if the other side sends so many option commands that the
+     * session stops listening to them.
+     *
+     * @return the stage, which is already complete if nothing is pending.
+     */
+    CompletionStage<Void> negotiationSettled();
+
+    /**
+     * Like {@link #negotiationSettled()}, but completes exceptionally with a
+     * {@link java.util.concurrent.TimeoutException} if some negotiation is still waiting when the timeout expires.
+     *
+     * @param timeout the longest time to wait.
+     * @param unit the unit of the timeout.
+     * @param loop schedules the timeout.  It should run its tasks on the session's event loop thread.
+     *
+     * @return the stage.
+     */
+    default CompletionStage<Void> negotiationSettled(long timeout, TimeUnit unit, ScheduledExecutorService loop) {
+        return NegotiationStages.withTimeout(negotiationSettled(), timeout, unit, loop);
+    }
 }
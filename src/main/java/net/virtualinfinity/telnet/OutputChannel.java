@@ -11,6 +11,7 @@ import java.util.function.Consumer;
  */
 public class OutputChannel {
     private final Consumer<ByteBuffer> output;
+    private final IacScanner scanner = IacScanner.preferred();
 
     /**
      * Create an output channel that writes to ByteBuffer consumer.
@@ -24,25 +25,36 @@ public class OutputChannel {
     /**
      * Writes the data from the inputData buffer to the raw output, escaping anything it needs to.
      *
+     * Data without any IACs is passed to the raw output as a single view of the input, without copying.  Otherwise,
+     * the data is copied into a single buffer of exactly the escaped size, with each IAC doubled.
+     *
      * @param inputData the data to send.
      */
     public void write(ByteBuffer inputData) {
-        ByteBuffer sliced = inputData.slice();
-        while (sliced.hasRemaining()) {
-            if (sliced.get() == TelnetConstants.IAC) {
-                sliced.flip();
-                rawWrite(sliced);
-                sliced.position(sliced.position() - 1);
-                sliced = sliced.slice();
-                sliced.position(1);
-            }
-        }
-        sliced.flip();
-        rawWrite(sliced);
+        rawWrite(escape(inputData, scanner, false));
+    }
+
+    /**
+     * Writes an already encoded frame to the raw output.  The frame isn't scanned or copied, the raw output is given
+     * a read-only view of it.
+     *
+     * @param frame the frame to send.
+     */
+    public void write(EncodedFrame frame) {
+        writeEncoded(frame.view());
+    }
+
+    /**
+     * Writes data which has already been escaped directly to the raw output.
+     *
+     * @param encoded the encoded data.
+     */
+    void writeEncoded(ByteBuffer encoded) {
+        rawWrite(encoded);
     }
 
     /**
-     * Wrutes the data to the raw output, escaping anything it needs to.
+     * Writes the data to the raw output, escaping anything it needs to.
      *
      * @param data the data to send.
      */
@@ -50,6 +62,65 @@ public class OutputChannel {
         write(ByteBuffer.wrap(data));
     }
 
+    /**
+     * Escapes the data between the position and limit of the input, without modifying the input.
+     *
+     * @param inputData the data to escape.
+     * @param scanner the scanner used to find the IACs.
+     * @param copy whether data without any IACs should be copied, rather than returned as a view of the input.
+     *
+     * @return a buffer containing the escaped data, from its position to its limit.
+     */
+    static ByteBuffer escape(ByteBuffer inputData, IacScanner scanner, boolean copy) {
+        final int escapes = countIACs(inputData, scanner);
+        if (escapes == 0 && !copy) {
+            return inputData.slice();
+        }
+        final ByteBuffer escaped = ByteBuffer.allocate(inputData.remaining() + escapes);
+        escapeInto(inputData, scanner, escaped);
+        escaped.flip();
+        return escaped;
+    }
+
+    /**
+     * @param data the data to search, between its position and limit.
+     * @param scanner the scanner used to find the IACs.
+     *
+     * @return the number of IACs in the data, which is also the number of bytes escaping will add.
+     */
+    static int countIACs(ByteBuffer data, IacScanner scanner) {
+        final int to = data.limit();
+        int count = 0;
+        for (int iac = scanner.indexOfIAC(data, data.position(), to); iac >= 0; iac = scanner.indexOfIAC(data, iac + 1, to)) {
+            ++count;
+        }
+        return count;
+    }
+
+    /**
+     * Puts the escaped data into the destination, copying the runs between IACs in bulk.  The data itself isn't
+     * modified.
+     *
+     * @param data the data to escape, between its position and limit.
+     * @param scanner the scanner used to find the IACs.
+     * @param destination the buffer to put the escaped data in.  Must have room for it.
+     */
+    static void escapeInto(ByteBuffer data, IacScanner scanner, ByteBuffer destination) {
+        final int to = data.limit();
+        final ByteBuffer source = data.duplicate();
+        int start = data.position();
+        for (int iac = scanner.indexOfIAC(data, start, to); iac >= 0; iac = scanner.indexOfIAC(data, iac + 1, to)) {
+            // Copy up to and including the IAC, then add the second IAC.
+            source.limit(iac + 1);
+            source.position(start);
+            destination.put(source).put(TelnetConstants.IAC);
+            start = iac + 1;
+        }
+        source.limit(to);
+        source.position(start);
+        destination.put(source);
+    }
+
     private void rawWrite(ByteBuffer data) {
         output.accept(data);
     }
@@ -0,0 +1,101 @@
+package net.virtualinfinity.telnet;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Limits the received data which has been handed off by the event loop thread, and is waiting for another thread to
+ * take it.  The event loop can't wait for the other thread to catch up, so a session which goes over the limit is
+ * closed, and the data which didn't fit is dropped.
+ *
+ * {@link #reserve(ByteBuffer, Session, Consumer)} must be called on the event loop thread, and
+ * {@link #release(int)} may be called from any thread.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+final class ReceivedDataLimit {
+    private static final Logger logger = Logger.getLogger(ReceivedDataLimit.class);
+    static final int DEFAULT_MAX_BYTES = 64 * 1024;
+
+    private final long maxBytes;
+    private final AtomicLong waitingBytes = new AtomicLong();
+    /**
+     * Only accessed on the event loop thread.
+     */
+    private boolean overflowed;
+
+    /**
+     * @param maxBytes the number of received bytes which may be waiting.
+     *
+     * @throws IllegalArgumentException if maxBytes isn't positive.
+     */
+    ReceivedDataLimit(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Reserves room for received data, which must be released once it has been taken.  If there isn't room, the data
+     * is skipped, and the first time that happens the failure is reported and then the session is closed.
+     *
+     * @param data the received data.
+     * @param session the session, which may be null if it hasn't connected yet.
+     * @param failed called with the failure when the limit is first exceeded, before the session is closed.
+     *
+     * @return true if the data fits, false if it was dropped.
+     */
+    boolean reserve(ByteBuffer data, Session session, Consumer<IOException> failed) {
+        final int length = data.remaining();
+        if (!overflowed && waitingBytes.get() + length <= maxBytes) {
+            waitingBytes.addAndGet(length);
+            return true;
+        }
+        data.position(data.limit());
+        if (!overflowed) {
+            overflowed = true;
+            failed.accept(new IOException("More than " + maxBytes + " received bytes are waiting to be handled"));
+            if (session != null) {
+                try {
+                    session.close();
+                } catch (final IOException e) {
+                    logger.warn("Unable to close session", e);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param length the number of reserved bytes which have been taken.
+     */
+    void release(int length) {
+        waitingBytes.addAndGet(-length);
+    }
+
+    /**
+     * @return true once the limit has been exceeded.  Only valid on the event loop thread.
+     */
+    boolean overflowed() {
+        return overflowed;
+    }
+
+    /**
+     * @return the number of reserved bytes which haven't been released.
+     */
+    long waitingBytes() {
+        return waitingBytes.get();
+    }
+
+    /**
+     * @return the number of received bytes which may be waiting.
+     */
+    long maxBytes() {
+        return maxBytes;
+    }
+}
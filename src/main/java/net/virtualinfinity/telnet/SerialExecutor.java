@@ -0,0 +1,69 @@
+package net.virtualinfinity.telnet;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs tasks one at a time, in the order they were submitted, on a shared executor.  Many serial executors can share
+ * one pool, and each only occupies a pool thread while it has tasks.  After a batch of tasks it gives the thread back
+ * to the pool, so a busy session can't starve the others.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+final class SerialExecutor implements Executor {
+    private static final int BATCH_SIZE = 64;
+
+    private final Executor executor;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable runTasks = this::runTasks;
+
+    /**
+     * @param executor the shared executor which runs the tasks.
+     */
+    SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        schedule();
+    }
+
+    /**
+     * @throws RejectedExecutionException if the shared executor won't run the batch.  The tasks stay queued, and the
+     * next one submitted tries again.
+     */
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(runTasks);
+            } catch (final RejectedExecutionException e) {
+                scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * The flag is only cleared once this batch is done, so tasks never overlap.  Anything submitted in the meantime
+     * is picked up by rescheduling.
+     */
+    private void runTasks() {
+        try {
+            Runnable task;
+            for (int count = 0; count < BATCH_SIZE && (task = tasks.poll()) != null; ++count) {
+                task.run();
+            }
+        } finally {
+            scheduled.set(false);
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
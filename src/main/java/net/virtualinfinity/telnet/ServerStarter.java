@@ -0,0 +1,263 @@
+package net.virtualinfinity.telnet;
+
+import net.virtualinfinity.nio.EventLoop;
+import net.virtualinfinity.nio.SocketChannelInterface;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A helper class to start Telnet sessions for accepted connections, spread over several event loops so a server
+ * isn't limited to a single core.
+ *
+ * Each event loop is added with an executor which runs tasks on the thread servicing that loop.  Every session is
+ * started from its loop's executor, and stays on that loop for its whole life.  The loops and their threads belong
+ * to the application, which should usually run one loop per core.
+ *
+ * @see ClientStarter
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class ServerStarter implements Closeable {
+    private static final Logger logger = Logger.getLogger(ServerStarter.class);
+    /**
+     * The delays before retrying after accept fails, which is usually because the process is out of file descriptors.
+     * The delay doubles with each failure in a row, up to the maximum.
+     */
+    private static final long MIN_ACCEPT_RETRY_MILLIS = 10;
+    private static final long MAX_ACCEPT_RETRY_MILLIS = 1000;
+
+    private final SessionStarter sessionStarter;
+    private final LoopSelection selection;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile Worker[] workers = {};
+    private volatile ServerSocketChannel serverChannel;
+
+    /**
+     * How to choose the event loop for a new session.
+     */
+    public enum LoopSelection {
+        /**
+         * Each loop in turn.
+         */
+        ROUND_ROBIN,
+        /**
+         * The loop with the fewest open sessions.  Better when sessions have very different lifetimes.
+         */
+        LEAST_LOADED,
+    }
+
+    /**
+     * Create a server starter with no event loops.
+     *
+     * @param sessionStarter the SessionStarter to use to start each session, such as {@link SessionStarters#server()}.
+     * @param selection how to choose the event loop for each session.
+     */
+    public ServerStarter(SessionStarter sessionStarter, LoopSelection selection) {
+        this.sessionStarter = sessionStarter;
+        this.selection = selection;
+    }
+
+    /**
+     * Adds an event loop which sessions may be started on.
+     *
+     * @param loop the event loop.
+     * @param loopExecutor runs tasks on the thread servicing the loop.
+     *
+     * @return this ServerStarter.
+     */
+    public synchronized ServerStarter addLoop(EventLoop loop, Executor loopExecutor) {
+        final Worker[] added = Arrays.copyOf(workers, workers.length + 1);
+        added[workers.length] = new Worker(loop, loopExecutor);
+        workers = added;
+        return this;
+    }
+
+    /**
+     * Starts a session for an accepted connection on one of the event loops.  This may be called from any thread.
+     *
+     * @param socketChannel the accepted channel.
+     * @param sessionListener The session listener to be informed of session events.
+     *
+     * @throws IllegalStateException if no event loops have been added.
+     * @throws RejectedExecutionException if the chosen loop's executor won't run the task.
+     */
+    public void startSession(SocketChannelInterface socketChannel, SessionListener sessionListener) {
+        final Worker worker = select();
+        worker.sessions.incrementAndGet();
+        final WorkerSessionListener listener = new WorkerSessionListener(sessionListener, worker);
+        try {
+            worker.executor.execute(() -> start(socketChannel, listener, worker));
+        } catch (final RejectedExecutionException e) {
+            listener.ended();
+            throw e;
+        }
+    }
+
+    private void start(SocketChannelInterface socketChannel, WorkerSessionListener listener, Worker worker) {
+        boolean started = false;
+        try {
+            sessionStarter.startSession(socketChannel, listener, worker.loop);
+            started = true;
+        } catch (final ClosedChannelException e) {
+            listener.connectionFailed(e);
+        } finally {
+            if (!started) {
+                listener.ended();
+                close(socketChannel);
+            }
+        }
+    }
+
+    /**
+     * Accepts connections from the given channel on a new thread, starting a session for each of them, until this
+     * starter is closed.  A connection whose session can't be started is closed, and accepting carries on.  If
+     * accepting itself fails, the thread waits before trying again, backing off up to a second.
+     *
+     * @param serverChannel a bound server channel, in blocking mode.
+     * @param channels adapts each accepted channel, which has already been made non-blocking.
+     * @param sessionListeners supplies the listener for each new session.
+     *
+     * @throws IllegalStateException if this starter is already listening.
+     */
+    public synchronized void listen(ServerSocketChannel serverChannel, Function<SocketChannel, SocketChannelInterface> channels, Supplier<SessionListener> sessionListeners) {
+        if (this.serverChannel != null) {
+            throw new IllegalStateException("Already listening");
+        }
+        this.serverChannel = serverChannel;
+        final Thread acceptor = new Thread(() -> accept(serverChannel, channels, sessionListeners), "telnet-acceptor-" + serverChannel.socket().getLocalPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void accept(ServerSocketChannel serverChannel, Function<SocketChannel, SocketChannelInterface> channels, Supplier<SessionListener> sessionListeners) {
+        long retryMillis = MIN_ACCEPT_RETRY_MILLIS;
+        while (serverChannel.isOpen()) {
+            final SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (final ClosedChannelException e) {
+                return;
+            } catch (final IOException e) {
+                logger.error("Unable to accept connection, retrying in " + retryMillis + "ms", e);
+                try {
+                    Thread.sleep(retryMillis);
+                } catch (final InterruptedException interrupted) {
+                    return;
+                }
+                retryMillis = Math.min(retryMillis * 2, MAX_ACCEPT_RETRY_MILLIS);
+                continue;
+            }
+            retryMillis = MIN_ACCEPT_RETRY_MILLIS;
+            try {
+                channel.configureBlocking(false);
+                startSession(channels.apply(channel), sessionListeners.get());
+            } catch (final IOException | RuntimeException e) {
+                logger.error("Unable to start session", e);
+                close(channel);
+            }
+        }
+    }
+
+    /**
+     * @return the number of sessions on each event loop which haven't closed yet, in the order they were added.
+     */
+    public int[] sessionsPerLoop() {
+        final Worker[] workers = this.workers;
+        final int[] sessions = new int[workers.length];
+        for (int index = 0; index < workers.length; ++index) {
+            sessions[index] = workers[index].sessions.get();
+        }
+        return sessions;
+    }
+
+    /**
+     * Stops accepting connections.  Sessions which have already been started aren't affected.
+     *
+     * @throws IOException if the server channel couldn't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        final ServerSocketChannel serverChannel = this.serverChannel;
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+    }
+
+    private Worker select() {
+        final Worker[] workers = this.workers;
+        if (workers.length == 0) {
+            throw new IllegalStateException("No event loops have been added");
+        }
+        if (selection == LoopSelection.ROUND_ROBIN) {
+            return workers[(next.getAndIncrement() & Integer.MAX_VALUE) % workers.length];
+        }
+        Worker least = workers[0];
+        for (int index = 1; index < workers.length; ++index) {
+            if (workers[index].sessions.get() < least.sessions.get()) {
+                least = workers[index];
+            }
+        }
+        return least;
+    }
+
+    private static void close(Closeable channel) {
+        try {
+            channel.close();
+        } catch (final IOException e) {
+            logger.warn("Unable to close channel", e);
+        }
+    }
+
+    private static final class Worker {
+        private final EventLoop loop;
+        private final Executor executor;
+        private final AtomicInteger sessions = new AtomicInteger();
+
+        private Worker(EventLoop loop, Executor executor) {
+            this.loop = loop;
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * Counts the session against its loop until the connection closes or fails.
+     */
+    private static final class WorkerSessionListener extends ForwardingSessionListener {
+        private final Worker worker;
+        private boolean ended;
+
+        private WorkerSessionListener(SessionListener delegate, Worker worker) {
+            super(delegate);
+            this.worker = worker;
+        }
+
+        private void ended() {
+            if (!ended) {
+                ended = true;
+                worker.sessions.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void connectionClosed() {
+            ended();
+            super.connectionClosed();
+        }
+
+        @Override
+        public void connectionFailed(IOException e) {
+            ended();
+            super.connectionFailed(e);
+        }
+    }
+}
@@ -28,4 +28,61 @@ public interface Session extends Closeable {
      * @return the SubNegotiationOutputChannel for option sub-negotiation.
      */
     SubNegotiationOutputChannel subNegotiationOutputChannel();
+
+    /**
+     * @return the table of commands received on this session, which may be used to add or replace command listeners.
+     */
+    CommandTable commands();
+
+    /**
+     * A session is unwritable while more output than its high watermark is waiting to be sent, and becomes writable
+     * again once the output has drained to its low watermark.  Writing to an unwritable session still works, but
+     * producers should hold off until {@link SessionListener#writabilityChanged(boolean)} is called.
+     *
+     * The default implementation is always writable.
+     *
+     * @return whether the session is writable.
+     */
+    default boolean isWritable() {
+        return true;
+    }
+
+    /**
+     * Stops reading from the socket until {@link #resumeReading()} is called, so a peer which sends faster than its
+     * input can be handled is held back by TCP flow control.  Reading is also suspended automatically while the
+     * session is unwritable.  Must be called on the event loop thread.
+     *
+     * The default implementation keeps reading.
+     */
+    default void suspendReading() {
+    }
+
+    /**
+     * Reads from the socket again after {@link #suspendReading()}, unless the session is unwritable.  Must be called
+     * on the event loop thread.
+     *
+     * The default implementation does nothing.
+     */
+    default void resumeReading() {
+    }
+
+    /**
+     * Holds all output until the matching call to {@link #uncork()}, so that a response built from many small writes
+     * is sent with as few socket writes as possible.  Corks nest.  Output is already corked during the listener
+     * callbacks for received data and commands.
+     *
+     * The default implementation doesn't hold output.
+     */
+    default void cork() {
+    }
+
+    /**
+     * Removes a cork added by {@link #cork()}. When the last cork is removed, the held output is sent.
+     *
+     * The default implementation does nothing.
+     *
+     * @throws IllegalStateException if the session isn't corked.
+     */
+    default void uncork() {
+    }
 }
@@ -0,0 +1,301 @@
+package net.virtualinfinity.telnet;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A group of sessions which are all sent the same data.  Published data is encoded once and shared by every member.
+ *
+ * Frames are handed to a member's session only while it is writable.  While it isn't, the group holds the frames for
+ * that member itself, up to a limit on the number of bytes held.  When a member falls behind by more than that, the
+ * group's {@link SlowConsumerPolicy} decides what happens, so a single stalled client can't make its output grow
+ * without bound.
+ *
+ * The easiest way to join a group is to start the session with the listener from
+ * {@link #membership(SessionListener, Executor)}, which adds the session when it connects, removes it when the
+ * connection ends, and sends its held frames as soon as it becomes writable.  A session added with
+ * {@link #add(Session, Executor)} only has its held frames sent once {@link #resume(Session)} is called, which should
+ * be done from the session's {@link SessionListener#writabilityChanged(boolean)}.
+ *
+ * Every member is added with an executor which runs tasks on the thread servicing that session's event loop.  The
+ * group only touches a session's output from that executor, so {@link #publish(ByteBuffer)} may be called from any
+ * thread.  If all publishing is done on the event loop thread, <code>Runnable::run</code> may be used as the executor.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class SessionGroup {
+    private static final Logger logger = Logger.getLogger(SessionGroup.class);
+
+    private final List<Member> members = new CopyOnWriteArrayList<>();
+    private final int maxQueuedBytes;
+    private final SlowConsumerPolicy policy;
+    private final AtomicLong droppedFrames = new AtomicLong();
+
+    /**
+     * What to do when publishing to a member would put it over its limit.
+     */
+    public enum SlowConsumerPolicy {
+        /**
+         * Discard the oldest held frames until the new frame fits.
+         */
+        DROP_OLDEST,
+        /**
+         * Discard the new frame for that member.
+         */
+        DROP_NEWEST,
+        /**
+         * Remove the member from the group and close its session.
+         */
+        DISCONNECT,
+    }
+
+    /**
+     * Creates an empty session group.
+     *
+     * @param maxQueuedBytes the maximum number of encoded bytes which may be held for any one member.
+     * @param policy the policy for members which exceed the limit.
+     */
+    public SessionGroup(int maxQueuedBytes, SlowConsumerPolicy policy) {
+        if (maxQueuedBytes <= 0) {
+            throw new IllegalArgumentException("maxQueuedBytes must be positive: " + maxQueuedBytes);
+        }
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.policy = policy;
+    }
+
+    /**
+     * Adds a session to this group.
+     *
+     * @param session the session.
+     * @param loopExecutor an executor which runs tasks on the session's event loop thread.
+     */
+    public void add(Session session, Executor loopExecutor) {
+        join(session, loopExecutor);
+    }
+
+    /**
+     * Wraps a session's listener, so that the session is a member of this group while it is connected.  Frames held
+     * for the session are sent when it becomes writable, before the wrapped listener is told.
+     *
+     * @param listener the session's own listener, which is still told about every event.
+     * @param loopExecutor an executor which runs tasks on the session's event loop thread.
+     *
+     * @return the listener to start the session with.
+     */
+    public SessionListener membership(SessionListener listener, Executor loopExecutor) {
+        return new MembershipListener(listener, loopExecutor);
+    }
+
+    private Member join(Session session, Executor loopExecutor) {
+        final Member member = new Member(session, loopExecutor);
+        members.add(member);
+        return member;
+    }
+
+    /**
+     * Removes a session from this group.  Frames which have already been handed to the session will still be sent,
+     * but frames held by the group are discarded.
+     *
+     * @param session the session.
+     *
+     * @return true if the session was a member of this group.
+     */
+    public boolean remove(Session session) {
+        final Member member = find(session);
+        if (member != null && members.remove(member)) {
+            member.removed = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sends the frames held for a member, for as long as its session stays writable.
+     *
+     * @param session the session, which has become writable.
+     */
+    public void resume(Session session) {
+        final Member member = find(session);
+        if (member != null) {
+            member.loopExecutor.execute(member::flush);
+        }
+    }
+
+    /**
+     * @return the number of sessions in this group.
+     */
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * @return the number of frames which have been discarded by the slow consumer policy, summed over all members.
+     */
+    public long droppedFrames() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * Publishes data to every member of this group.  The data is encoded before this method returns, so the buffer
+     * may be reused.
+     *
+     * @param data the data to send.
+     */
+    public void publish(ByteBuffer data) {
+        publish(EncodedFrame.encode(data));
+    }
+
+    /**
+     * Publishes an encoded frame to every member of this group.
+     *
+     * @param frame the frame to send.
+     */
+    public void publish(EncodedFrame frame) {
+        for (final Member member : members) {
+            member.loopExecutor.execute(() -> member.send(frame));
+        }
+    }
+
+    private Member find(Session session) {
+        for (final Member member : members) {
+            if (member.session == session) {
+                return member;
+            }
+        }
+        return null;
+    }
+
+    private final class MembershipListener extends ForwardingSessionListener {
+        private final Executor loopExecutor;
+        /**
+         * Only accessed on the event loop thread.
+         */
+        private Member member;
+
+        MembershipListener(SessionListener delegate, Executor loopExecutor) {
+            super(delegate);
+            this.loopExecutor = loopExecutor;
+        }
+
+        @Override
+        public void connected(Session session) {
+            member = join(session, loopExecutor);
+            super.connected(session);
+        }
+
+        @Override
+        public void writabilityChanged(boolean writable) {
+            if (writable && member != null) {
+                member.flush();
+            }
+            super.writabilityChanged(writable);
+        }
+
+        @Override
+        public void connectionClosed() {
+            leave();
+            super.connectionClosed();
+        }
+
+        @Override
+        public void connectionFailed(IOException e) {
+            leave();
+            super.connectionFailed(e);
+        }
+
+        private void leave() {
+            if (member != null) {
+                remove(member.session);
+            }
+        }
+    }
+
+    private final class Member {
+        private final Session session;
+        private final Executor loopExecutor;
+        /**
+         * The frames which haven't been handed to the session yet, oldest first.  Only accessed on the event loop
+         * thread.
+         */
+        private final ArrayDeque<EncodedFrame> held = new ArrayDeque<>();
+        private long heldBytes;
+        private volatile boolean removed;
+
+        Member(Session session, Executor loopExecutor) {
+            this.session = session;
+            this.loopExecutor = loopExecutor;
+        }
+
+        void send(EncodedFrame frame) {
+            if (removed) {
+                return;
+            }
+            if (!held.isEmpty() || !session.isWritable()) {
+                if (heldBytes + frame.length() > maxQueuedBytes && !makeRoom(frame.length())) {
+                    return;
+                }
+                held.addLast(frame);
+                heldBytes += frame.length();
+                flush();
+            } else {
+                session.outputChannel().write(frame);
+            }
+        }
+
+        void flush() {
+            if (removed) {
+                held.clear();
+                heldBytes = 0;
+                return;
+            }
+            while (!held.isEmpty() && session.isWritable()) {
+                final EncodedFrame frame = held.removeFirst();
+                heldBytes -= frame.length();
+                session.outputChannel().write(frame);
+            }
+        }
+
+        /**
+         * Applies the slow consumer policy.
+         *
+         * @param length the length of the new frame.
+         *
+         * @return true if the new frame should be held.
+         */
+        private boolean makeRoom(int length) {
+            switch (policy) {
+                case DROP_OLDEST:
+                    while (!held.isEmpty() && heldBytes + length > maxQueuedBytes) {
+                        heldBytes -= held.removeFirst().length();
+                        droppedFrames.incrementAndGet();
+                    }
+                    if (heldBytes + length <= maxQueuedBytes) {
+                        return true;
+                    }
+                    break;
+                case DISCONNECT:
+                    removed = true;
+                    members.remove(this);
+                    held.clear();
+                    heldBytes = 0;
+                    try {
+                        session.close();
+                    } catch (final IOException e) {
+                        logger.warn("Unable to close slow session", e);
+                    }
+                    return false;
+                default:
+                    break;
+            }
+            droppedFrames.incrementAndGet();
+            return false;
+        }
+    }
+}
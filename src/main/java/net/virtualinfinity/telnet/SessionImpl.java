@@ -1,6 +1,5 @@
 package net.virtualinfinity.telnet;
 
-import java.io.Closeable;
 import java.io.IOException;
 
 /**
@@ -12,20 +11,29 @@ final class SessionImpl implements Session {
     private final Options options;
     private final OutputChannel outputChannel;
     private final SubNegotiationOutputChannel subNegotiationOutputChannel;
-    private final Closeable closer;
+    private final CommandTable commands;
+    private final WatermarkedOutput output;
+    private final CorkingOutput corkingOutput;
+    private final FlowControlledChannel channel;
 
     /**
      * Constructs a new Session facade.
      * @param options the options instance.
      * @param outputChannel the output channel
      * @param subNegotiationOutputChannel the sub-negotiation output channel
-     * @param closer the action to perform on close.
+     * @param commands the table of received commands.
+     * @param output the output which tracks the writability of the session.
+     * @param corkingOutput the output which holds writes while corked.
+     * @param channel the socket channel.
      */
-    SessionImpl(Options options, OutputChannel outputChannel, SubNegotiationOutputChannel subNegotiationOutputChannel, Closeable closer) {
+    SessionImpl(Options options, OutputChannel outputChannel, SubNegotiationOutputChannel subNegotiationOutputChannel, CommandTable commands, WatermarkedOutput output, CorkingOutput corkingOutput, FlowControlledChannel channel) {
         this.options = options;
         this.outputChannel = outputChannel;
         this.subNegotiationOutputChannel = subNegotiationOutputChannel;
-        this.closer = closer;
+        this.commands = commands;
+        this.output = output;
+        this.corkingOutput = corkingOutput;
+        this.channel = channel;
     }
 
     @Override
@@ -43,8 +51,38 @@ final class SessionImpl implements Session {
         return subNegotiationOutputChannel;
     }
 
+    @Override
+    public CommandTable commands() {
+        return commands;
+    }
+
+    @Override
+    public boolean isWritable() {
+        return output.update();
+    }
+
+    @Override
+    public void suspendReading() {
+        channel.suspendReading();
+    }
+
+    @Override
+    public void resumeReading() {
+        channel.resumeReading();
+    }
+
+    @Override
+    public void cork() {
+        corkingOutput.cork();
+    }
+
+    @Override
+    public void uncork() {
+        corkingOutput.uncork();
+    }
+
     @Override
     public void close() throws IOException {
-        closer.close();
+        channel.close();
     }
 }
@@ -71,6 +71,48 @@ public interface SessionListener {
     default void doGoAhead() {
     }
 
+    /**
+     * Called when the remote has sent a DM (Data Mark) command.
+     */
+    default void doDataMark() {
+    }
+
+    /**
+     * Called when the remote has sent an EOR command.
+     */
+    default void doEndOfRecord() {
+    }
+
+    /**
+     * Called when the remote has sent an ABORT command.
+     */
+    default void doAbort() {
+    }
+
+    /**
+     * Called when the remote has sent a SUSP command.
+     */
+    default void doSuspend() {
+    }
+
+    /**
+     * Called when the remote has sent an EOF command.
+     */
+    default void doEndOfFile() {
+    }
+
+    /**
+     * Called when the session's output rises above its high watermark, or drains back down to its low watermark.
+     * Writability is checked whenever output is written, output is sent to the socket, or {@link Session#isWritable()}
+     * is called.  Reading from the socket is suspended while the session is unwritable.
+     *
+     * @param writable whether the session is now writable.
+     *
+     * @see Session#isWritable()
+     */
+    default void writabilityChanged(boolean writable) {
+    }
+
     /**
      * Called when the connection has been deemed closed.
      */
@@ -0,0 +1,94 @@
+package net.virtualinfinity.telnet;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A Reactive Streams publisher of a session's decoded input.  Use an instance as the session's listener, and
+ * subscribe to it.  Each received buffer is delivered only once the subscriber has requested it, and the session only
+ * reads from the socket while there is outstanding demand.
+ *
+ * Only one subscriber is allowed.  Cancelling the subscription closes the session.  All of the subscriber's methods
+ * are called on the event loop thread, including {@code onSubscribe}.
+ *
+ * On Java 9 and later, {@code org.reactivestreams.FlowAdapters.toFlowPublisher(publisher)} gives a
+ * {@code java.util.concurrent.Flow.Publisher} view.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class SessionPublisher extends DemandDrivenInput implements Publisher<ByteBuffer> {
+    private static final Subscription REJECTED = new Subscription() {
+        @Override
+        public void request(long count) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private final Executor loopExecutor;
+    private final AtomicReference<Subscriber<? super ByteBuffer>> subscriber = new AtomicReference<>();
+
+    /**
+     * @param loopExecutor runs tasks on the thread servicing the session's event loop.
+     */
+    public SessionPublisher(Executor loopExecutor) {
+        super(loopExecutor);
+        this.loopExecutor = loopExecutor;
+    }
+
+    /**
+     * Subscribes to the session's input.  A second subscriber is sent an {@link IllegalStateException}.
+     *
+     * @param subscriber the subscriber.
+     *
+     * @throws NullPointerException if the subscriber is null.
+     */
+    @Override
+    public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        if (!this.subscriber.compareAndSet(null, subscriber)) {
+            loopExecutor.execute(() -> {
+                subscriber.onSubscribe(REJECTED);
+                subscriber.onError(new IllegalStateException("A session's input can only have one subscriber"));
+            });
+            return;
+        }
+        loopExecutor.execute(() -> {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long count) {
+                    SessionPublisher.this.request(count);
+                }
+
+                @Override
+                public void cancel() {
+                    SessionPublisher.this.cancel();
+                }
+            });
+            subscribed();
+        });
+    }
+
+    @Override
+    void next(ByteBuffer data) {
+        subscriber.get().onNext(data);
+    }
+
+    @Override
+    void error(Throwable failure) {
+        subscriber.get().onError(failure);
+    }
+
+    @Override
+    void complete() {
+        subscriber.get().onComplete();
+    }
+}
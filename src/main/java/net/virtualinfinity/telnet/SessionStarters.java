@@ -21,6 +21,8 @@ package net.virtualinfinity.telnet;
 public final class SessionStarters {
 
     private static final int DEFAULT_INPUT_BUFFER_SIZE = 2048;
+    private static final int DEFAULT_LOW_WATERMARK = 32 * 1024;
+    private static final int DEFAULT_HIGH_WATERMARK = 64 * 1024;
 
     /**
      * Creates a new session starter appropriate for client connections, using the default input buffer size of 2048.
@@ -39,7 +41,7 @@ public final class SessionStarters {
      * @return a SessionStarter.
      */
     public static SessionStarter client(int inputBufferSize) {
-        return new DefaultSessionStarter(inputBufferSize, false);
+        return new DefaultSessionStarter(inputBufferSize, false, DEFAULT_LOW_WATERMARK, DEFAULT_HIGH_WATERMARK, NegotiationProfile.NONE);
     }
 
     /**
@@ -59,6 +61,52 @@ public final class SessionStarters {
      * @return a SessionStarter.
      */
     public static SessionStarter server(int inputBufferSize) {
-        return new DefaultSessionStarter(inputBufferSize, true);
+        return new DefaultSessionStarter(inputBufferSize, true, DEFAULT_LOW_WATERMARK, DEFAULT_HIGH_WATERMARK, NegotiationProfile.NONE);
+    }
+
+    /**
+     * Creates a new session starter for server connections which keeps reading while output is pending.  Instead of
+     * all output being sent before reading, each session reports when its output rises above the high watermark and
+     * drains back to the low watermark, so that producers can throttle themselves.
+     *
+     * @param inputBufferSize The input buffer size.
+     * @param lowWatermark The number of unsent bytes at or below which a session becomes writable again.
+     * @param highWatermark The number of unsent bytes above which a session becomes unwritable.
+     *
+     * @return a SessionStarter.
+     *
+     * @see SessionListener#writabilityChanged(boolean)
+     */
+    public static SessionStarter server(int inputBufferSize, int lowWatermark, int highWatermark) {
+        return server(inputBufferSize, lowWatermark, highWatermark, NegotiationProfile.NONE);
+    }
+
+    /**
+     * Creates a new session starter appropriate for server connections, using the default input buffer size of 2048,
+     * which starts each session's negotiation from the given profile.
+     *
+     * @param profile the options to allow and request for each session.
+     *
+     * @return a SessionStarter.
+     */
+    public static SessionStarter server(NegotiationProfile profile) {
+        return new DefaultSessionStarter(DEFAULT_INPUT_BUFFER_SIZE, true, DEFAULT_LOW_WATERMARK, DEFAULT_HIGH_WATERMARK, profile);
+    }
+
+    /**
+     * Creates a new session starter for server connections which keeps reading while output is pending, and which
+     * starts each session's negotiation from the given profile.
+     *
+     * @param inputBufferSize The input buffer size.
+     * @param lowWatermark The number of unsent bytes at or below which a session becomes writable again.
+     * @param highWatermark The number of unsent bytes above which a session becomes unwritable.
+     * @param profile the options to allow and request for each session.
+     *
+     * @return a SessionStarter.
+     *
+     * @see #server(int, int, int)
+     */
+    public static SessionStarter server(int inputBufferSize, int lowWatermark, int highWatermark, NegotiationProfile profile) {
+        return new DefaultSessionStarter(inputBufferSize, false, lowWatermark, highWatermark, profile);
     }
 }
@@ -0,0 +1,155 @@
+package net.virtualinfinity.telnet;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets any thread write to a session.  A {@link Session} itself may only be used on its event loop thread, so other
+ * threads submit their writes here instead.  Data is escaped and copied on the writing thread, then put on a
+ * lock-free queue.  The queue is drained on the event loop thread, and a whole batch of writes needs only one task
+ * to be submitted to the loop, however many threads are writing.
+ *
+ * Writes from the same thread are sent in the order they were made.  Writes from different threads are interleaved
+ * whole, never split.  Nothing is sent while a {@link SubNegotiationWriter} is open on the session.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class SessionWriteQueue {
+    private final Session session;
+    private final Executor loopExecutor;
+    private final Queue<ByteBuffer> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final IacScanner scanner = IacScanner.preferred();
+    private final Runnable drain = this::drain;
+    private final Runnable scheduledDrain = this::scheduledDrain;
+    private final Runnable drained;
+
+    /**
+     * @param session the session to write to.
+     * @param loopExecutor runs tasks on the thread servicing the session's event loop.
+     */
+    public SessionWriteQueue(Session session, Executor loopExecutor) {
+        this(session, loopExecutor, () -> {});
+    }
+
+    /**
+     * @param session the session to write to.
+     * @param loopExecutor runs tasks on the thread servicing the session's event loop.
+     * @param drained run on the event loop thread after each batch has been handed to the session's output.
+     */
+    SessionWriteQueue(Session session, Executor loopExecutor, Runnable drained) {
+        this.session = session;
+        this.loopExecutor = loopExecutor;
+        this.drained = drained;
+    }
+
+    /**
+     * Queues the remaining data in the buffer to be escaped and sent.  The data is copied, so the buffer may be reused
+     * as soon as this returns.
+     *
+     * @param data the data to send.
+     *
+     * @see OutputChannel#write(ByteBuffer)
+     */
+    public void write(ByteBuffer data) {
+        submit(OutputChannel.escape(data, scanner, true));
+        data.position(data.limit());
+    }
+
+    /**
+     * Queues the given data to be escaped and sent.
+     *
+     * @param data the data to send.
+     *
+     * @see OutputChannel#write(byte[])
+     */
+    public void write(byte[] data) {
+        write(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Queues an encoded frame to be sent.
+     *
+     * @param frame the frame to send.
+     *
+     * @see OutputChannel#write(EncodedFrame)
+     */
+    public void write(EncodedFrame frame) {
+        submit(frame.view());
+    }
+
+    /**
+     * Queues a whole sub-negotiation to be sent.  The data is copied, so the buffer may be reused as soon as this
+     * returns.
+     *
+     * @param optionId the option id.
+     * @param data the data between the IAC SB <i>optionId</i> and the IAC SE.
+     *
+     * @see SubNegotiationOutputChannel#sendSubNegotiation(int, ByteBuffer)
+     */
+    public void sendSubNegotiation(int optionId, ByteBuffer data) {
+        final ByteBuffer frame = ByteBuffer.allocate(data.remaining() + OutputChannel.countIACs(data, scanner) + 5);
+        frame.put(TelnetConstants.IAC).put(TelnetConstants.SB).put((byte) optionId);
+        OutputChannel.escapeInto(data, scanner, frame);
+        frame.put(TelnetConstants.IAC).put(TelnetConstants.SE).flip();
+        data.position(data.limit());
+        submit(frame);
+    }
+
+    /**
+     * @return the number of bytes which have been queued but not yet handed to the session's output.  Producers can
+     * use this to limit how far they get ahead of the event loop.
+     */
+    public long queuedBytes() {
+        return queuedBytes.get();
+    }
+
+    /**
+     * @throws RejectedExecutionException if the event loop won't run the drain.  The data stays
+     * queued, and the next write tries again.
+     */
+    private void submit(ByteBuffer encoded) {
+        queuedBytes.addAndGet(encoded.remaining());
+        queue.add(encoded);
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                loopExecutor.execute(scheduledDrain);
+            } catch (final RejectedExecutionException e) {
+                drainScheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Waits for any open sub-negotiation writer to be closed, so the batch doesn't become part of the sub-negotiation.
+     * The drain stays scheduled until then, so writes in the meantime don't submit more tasks.
+     */
+    private void scheduledDrain() {
+        session.subNegotiationOutputChannel().afterOpenWriter(drain);
+    }
+
+    /**
+     * Hands everything queued to the session's output, corked so the batch is sent together.  The flag is cleared
+     * before polling, so a write which races with the drain either gets drained now or schedules the next drain.
+     */
+    private void drain() {
+        drainScheduled.set(false);
+        session.cork();
+        try {
+            for (ByteBuffer encoded = queue.poll(); encoded != null; encoded = queue.poll()) {
+                queuedBytes.addAndGet(-encoded.remaining());
+                session.outputChannel().writeEncoded(encoded);
+            }
+        } finally {
+            session.uncork();
+        }
+        drained.run();
+    }
+}
@@ -1,130 +1,111 @@
 package net.virtualinfinity.telnet;
 
-import org.apache.log4j.Logger;
-
-import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.util.function.ObjIntConsumer;
-
 /**
- * Represents the current state of the telnet stream. Used by the {@link InputChannelDecoder}.
+ * The states and transitions of the telnet stream. Used by the {@link InputChannelDecoder}.
  *
- * This is basically a hand-coded lexer recognizer.
+ * This is basically a table-driven lexer recognizer. Each state is a small int, and the transition table is indexed by
+ * the state and the next input byte. Each entry packs the next state together with the action the decoder should
+ * perform for that transition.
+ *
+ * The {@link #DATA} state has no interesting transitions except for IAC, so the decoder searches for the next IAC
+ * in bulk rather than consulting the table for every byte.
  *
  * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
  */
-abstract class StreamState {
-    private static final StreamState NORMAL_STATE = new NormalState();
-    private static final StreamState IN_IAC = new InIAC();
+final class StreamState {
+    static final int DATA = 0;
+    static final int IAC = 1;
+    static final int DO = 2;
+    static final int DONT = 3;
+    static final int WILL = 4;
+    static final int WONT = 5;
+    static final int SB = 6;
+
+    private static final int STATE_COUNT = 7;
+    private static final int STATE_BITS = 3;
+    private static final int STATE_MASK = (1 << STATE_BITS) - 1;
 
+    static final int NO_ACTION = 0;
+    static final int RECEIVED_DO = 1;
+    static final int RECEIVED_DONT = 2;
+    static final int RECEIVED_WILL = 3;
+    static final int RECEIVED_WONT = 4;
+    static final int RECEIVED_START_SUB_NEGOTIATION = 5;
+    static final int RECEIVED_END_SUB_NEGOTIATION = 6;
+    static final int ESCAPED_IAC = 7;
     /**
-     * Attempt to process some of the byte buffer.
-     *
-     * @param buffer incoming data.
-     * @param commandReceiver the command receiver to dispatch commands to.
-     * @return the new state.
-     * @throws IOException
+     * Any other command. Which commands are understood is up to the {@link CommandTable}.
      */
-    public abstract StreamState accept(ByteBuffer buffer, CommandReceiver commandReceiver) throws IOException;
-
+    static final int RECEIVED_COMMAND = 8;
     /**
-     * @return the initial state for streams.
+     * Not a transition action, but used for data runs recorded on an {@link EventTape}.
      */
-    public static StreamState initial() {
-        return NORMAL_STATE;
-    }
+    static final int RECEIVED_DATA = 9;
 
-    private static class InIAC extends StreamState {
-        private static final WaitingForOption IN_DO = new WaitingForOption(CommandReceiver::receivedDo);
-        private static final WaitingForOption IN_DONT = new WaitingForOption(CommandReceiver::receivedDont);
-        private static final WaitingForOption IN_WILL = new WaitingForOption(CommandReceiver::receivedWill);
-        private static final WaitingForOption IN_WONT = new WaitingForOption(CommandReceiver::receivedWont);
-        private static final WaitingForOption IN_SB = new WaitingForOption(CommandReceiver::receivedStartSubNegotiation);
+    private static final byte[] TRANSITIONS = new byte[STATE_COUNT << 8];
 
-        @Override
-        public StreamState accept(ByteBuffer buffer, CommandReceiver commandReceiver) throws IOException {
-            final byte command = buffer.get();
-            switch (command) {
-                case TelnetConstants.IAC:
-                    commandReceiver.receivedIAC();
-                case TelnetConstants.NOP:
-                    return NORMAL_STATE;
-                case TelnetConstants.DO:
-                    return IN_DO;
-                case TelnetConstants.DONT:
-                    return IN_DONT;
-                case TelnetConstants.WILL:
-                    return IN_WILL;
-                case TelnetConstants.WONT:
-                    return IN_WONT;
-                case TelnetConstants.SB:
-                    return IN_SB;
-                case TelnetConstants.SE:
-                    commandReceiver.receivedEndSubNegotiation();
-                    return NORMAL_STATE;
-                case TelnetConstants.BRK:
-                    commandReceiver.receivedBreak();
-                    return NORMAL_STATE;
-                case TelnetConstants.IP:
-                    commandReceiver.receivedInterrupt();
-                    return NORMAL_STATE;
-                case TelnetConstants.AO:
-                    commandReceiver.receivedAbortOutput();
-                    return NORMAL_STATE;
-                case TelnetConstants.AYT:
-                    commandReceiver.receivedAreYouThere();
-                    return NORMAL_STATE;
-                case TelnetConstants.EC:
-                    commandReceiver.receivedEraseCharacter();
-                    return NORMAL_STATE;
-                case TelnetConstants.EL:
-                    commandReceiver.receivedEraseLine();
-                    return NORMAL_STATE;
-                case TelnetConstants.GA:
-                    commandReceiver.receivedGoAhead();
-                    return NORMAL_STATE;
-
-            }
-            Logger.getLogger(StreamState.class).error("Unexpected command after IAC: " + (((int)command) & 255));
-            return NORMAL_STATE;
+    static {
+        for (int input = 0; input < 256; ++input) {
+            transition(DATA, input, DATA, NO_ACTION);
+            transition(IAC, input, DATA, RECEIVED_COMMAND);
+            transition(DO, input, DATA, RECEIVED_DO);
+            transition(DONT, input, DATA, RECEIVED_DONT);
+            transition(WILL, input, DATA, RECEIVED_WILL);
+            transition(WONT, input, DATA, RECEIVED_WONT);
+            transition(SB, input, DATA, RECEIVED_START_SUB_NEGOTIATION);
         }
+        transition(DATA, TelnetConstants.IAC, IAC, NO_ACTION);
 
+        transition(IAC, TelnetConstants.IAC, DATA, ESCAPED_IAC);
+        transition(IAC, TelnetConstants.DO, DO, NO_ACTION);
+        transition(IAC, TelnetConstants.DONT, DONT, NO_ACTION);
+        transition(IAC, TelnetConstants.WILL, WILL, NO_ACTION);
+        transition(IAC, TelnetConstants.WONT, WONT, NO_ACTION);
+        transition(IAC, TelnetConstants.SB, SB, NO_ACTION);
+        transition(IAC, TelnetConstants.SE, DATA, RECEIVED_END_SUB_NEGOTIATION);
     }
 
-    private static class WaitingForOption extends StreamState {
-        private final ObjIntConsumer<CommandReceiver> command;
+    private StreamState() {
+    }
 
-        public WaitingForOption(ObjIntConsumer<CommandReceiver> command) {
-            this.command = command;
-        }
+    private static void transition(int state, int input, int nextState, int action) {
+        TRANSITIONS[state << 8 | input & 0xFF] = (byte) (action << STATE_BITS | nextState);
+    }
 
-        @Override
-        public StreamState accept(ByteBuffer buffer, CommandReceiver commandReceiver) {
-            command.accept(commandReceiver, ((int) buffer.get())&0xFF);
+    /**
+     * Look up the transition for the given state and input.
+     *
+     * @param state the current state.
+     * @param input the input byte, as an unsigned value.
+     *
+     * @return the packed transition. Use {@link #nextState(int)} and {@link #action(int)} to unpack it.
+     */
+    static int transition(int state, int input) {
+        return TRANSITIONS[state << 8 | input];
+    }
 
-            return NORMAL_STATE;
-        }
+    /**
+     * @param transition the packed transition.
+     *
+     * @return the state to move to.
+     */
+    static int nextState(int transition) {
+        return transition & STATE_MASK;
     }
 
-    private static class NormalState extends StreamState {
-        @Override
-        public StreamState accept(ByteBuffer buffer, CommandReceiver commandReceiver) throws IOException {
-            final ByteBuffer sliced = buffer.slice();
-            while (sliced.hasRemaining()) {
-                if (sliced.get() == TelnetConstants.IAC) {
-                    final int count = sliced.position();
-                    buffer.position(buffer.position() + count);
-                    sliced.rewind();
-                    sliced.limit(count-1);
-                    commandReceiver.receivedData(sliced);
+    /**
+     * @param transition the packed transition.
+     *
+     * @return the action to perform.
+     */
+    static int action(int transition) {
+        return (transition & 0xFF) >>> STATE_BITS;
+    }
 
-                    return IN_IAC;
-                }
-            }
-            commandReceiver.receivedData(buffer);
-            // Ensure that the buffer has been consumed.
-            buffer.position(buffer.limit());
-            return this;
-        }
+    /**
+     * @return the initial state for streams.
+     */
+    static int initial() {
+        return DATA;
     }
 }
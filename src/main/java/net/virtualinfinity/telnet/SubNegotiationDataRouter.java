@@ -13,6 +13,5 @@ import java.nio.ByteBuffer;
 interface SubNegotiationDataRouter {
     void receivedEndSubNegotiation();
     void receivedData(ByteBuffer bytes);
-    void receivedIAC();
     void receivedStartSubNegotiation(SubNegotiationListener listener);
 }
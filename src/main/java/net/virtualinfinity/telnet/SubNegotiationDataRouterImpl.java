@@ -3,22 +3,19 @@ package net.virtualinfinity.telnet;
 import net.virtualinfinity.telnet.option.SubNegotiationListener;
 import net.virtualinfinity.telnet.option.handlers.OptionSessionHandler;
 
-import java.nio.Buffer;
 import java.nio.ByteBuffer;
-import java.util.function.Consumer;
 
 /**
  * Routes sub-negotiation data to the right place.
  * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
  */
 class SubNegotiationDataRouterImpl implements SubNegotiationDataRouter {
-    private final Consumer<ByteBuffer> streamReceiver;
+    private final SessionListener listener;
     private SubNegotiationListener optionSessionHandler;
-    private Consumer<ByteBuffer> receiver;
+    private boolean inSubNegotiation;
 
     public SubNegotiationDataRouterImpl(SessionListener listener) {
-        streamReceiver = listener::incomingData;
-        receiver = streamReceiver;
+        this.listener = listener;
     }
 
     @Override
@@ -27,28 +24,27 @@ class SubNegotiationDataRouterImpl implements SubNegotiationDataRouter {
             optionSessionHandler.endSubNegotiation();
             optionSessionHandler = null;
         }
-        receiver = streamReceiver;
+        inSubNegotiation = false;
     }
 
     @Override
     public void receivedData(ByteBuffer bytes) {
-        receiver.accept(bytes);
-    }
-
-    @Override
-    public void receivedIAC() {
-        receivedData(ByteBuffer.wrap(new byte[]{TelnetConstants.IAC}));
+        if (!inSubNegotiation) {
+            listener.incomingData(bytes);
+        } else if (optionSessionHandler != null) {
+            optionSessionHandler.subNegotiationData(bytes);
+        } else {
+            // Nobody is listening to this sub-negotiation.
+            bytes.position(bytes.limit());
+        }
     }
 
     @Override
     public void receivedStartSubNegotiation(SubNegotiationListener optionSessionHandler) {
         this.optionSessionHandler = optionSessionHandler;
-        // Set the receiver to the subNegotiation data, or a null receiver if no listener.
+        inSubNegotiation = true;
         if (optionSessionHandler != null) {
-            receiver = optionSessionHandler::subNegotiationData;
             optionSessionHandler.startSubNegotiation();
-        } else {
-            receiver = Buffer::clear;
         }
     }
 
@@ -0,0 +1,134 @@
+package net.virtualinfinity.telnet;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Builds a sub-negotiation directly in its encoded form.  IAC SB <i>optionId</i> is written when the frame is started,
+ * data is escaped as it's put, and {@link #send()} adds the IAC SE and writes the whole frame as a single buffer.
+ *
+ * Frames are built one after another in a shared slab, and each frame which is sent is a view of its part of the
+ * slab, so small frames don't need an allocation each.  A new slab is only allocated when the current one is full.
+ *
+ * <pre>
+ *     session.subNegotiationOutputChannel().frame(optionId).putShort(width).putShort(height).send();
+ * </pre>
+ *
+ * @see SubNegotiationOutputChannel#frame(int)
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class SubNegotiationFrameBuilder {
+    private static final int SLAB_SIZE = 4096;
+
+    private final Consumer<ByteBuffer> output;
+    private final IacScanner scanner = IacScanner.preferred();
+    private ByteBuffer slab = ByteBuffer.allocate(SLAB_SIZE);
+    private int frameStart;
+
+    /**
+     * @param output the raw output which frames are sent to.
+     */
+    SubNegotiationFrameBuilder(Consumer<ByteBuffer> output) {
+        this.output = output;
+    }
+
+    /**
+     * Starts a new frame. Any frame which was started but not sent is discarded.
+     *
+     * @param optionId the option id.
+     *
+     * @return this.
+     */
+    SubNegotiationFrameBuilder start(int optionId) {
+        slab.position(frameStart);
+        reserve(3);
+        slab.put(TelnetConstants.IAC).put(TelnetConstants.SB).put((byte) optionId);
+        return this;
+    }
+
+    /**
+     * Puts a single byte, escaping it if it's an IAC.
+     *
+     * @param value the byte.
+     *
+     * @return this.
+     */
+    public SubNegotiationFrameBuilder put(byte value) {
+        reserve(2);
+        slab.put(value);
+        if (value == TelnetConstants.IAC) {
+            slab.put(TelnetConstants.IAC);
+        }
+        return this;
+    }
+
+    /**
+     * Puts two bytes, in network (big-endian) order.
+     *
+     * @param value the value. Only the low sixteen bits are used.
+     *
+     * @return this.
+     */
+    public SubNegotiationFrameBuilder putShort(int value) {
+        return put((byte) (value >>> 8)).put((byte) value);
+    }
+
+    /**
+     * Puts all of the given bytes, escaping any IACs.
+     *
+     * @param data the bytes.
+     *
+     * @return this.
+     */
+    public SubNegotiationFrameBuilder put(byte[] data) {
+        return put(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Puts the bytes between the position and limit of the given buffer, escaping any IACs.  The buffer itself isn't
+     * modified.
+     *
+     * @param data the bytes.
+     *
+     * @return this.
+     */
+    public SubNegotiationFrameBuilder put(ByteBuffer data) {
+        reserve(data.remaining() + OutputChannel.countIACs(data, scanner));
+        OutputChannel.escapeInto(data, scanner, slab);
+        return this;
+    }
+
+    /**
+     * Ends the frame with IAC SE and sends it.
+     */
+    public void send() {
+        reserve(2);
+        slab.put(TelnetConstants.IAC).put(TelnetConstants.SE);
+        final ByteBuffer frame = slab.duplicate();
+        frame.limit(slab.position());
+        frame.position(frameStart);
+        frameStart = slab.position();
+        output.accept(frame);
+    }
+
+    /**
+     * Makes sure there is room in the slab for more of the current frame.  If there isn't, the frame so far is moved
+     * to the start of a new slab.  The old slab is left as it is, since the frames already sent from it may still be
+     * waiting to be written.
+     *
+     * @param bytes the number of bytes needed.
+     */
+    private void reserve(int bytes) {
+        if (slab.remaining() >= bytes) {
+            return;
+        }
+        final int length = slab.position() - frameStart;
+        final ByteBuffer frame = slab.duplicate();
+        frame.limit(slab.position());
+        frame.position(frameStart);
+        slab = ByteBuffer.allocate(Math.max(SLAB_SIZE, 2 * (length + bytes)));
+        slab.put(frame);
+        frameStart = 0;
+    }
+}
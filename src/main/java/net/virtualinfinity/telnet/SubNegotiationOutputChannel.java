@@ -10,10 +10,58 @@ import java.nio.ByteBuffer;
 public interface SubNegotiationOutputChannel {
     /**
      * Sends a sub-negotiation. This method sends the IAC SB <i>optionId</i>, the encoded/escaped <code>data</code>, and then
-     * an IAC SE.  There is no way to send a partial sub-negotiation, so the entire message needs to be constructed at once.
+     * an IAC SE.  The entire message needs to be constructed at once; use {@link #open(int)} to send one in pieces.
+     * While a writer returned by {@link #open(int)} is open, the sub-negotiation is held until the writer is closed.
      *
      * @param optionId the option id.
      * @param data the data.
      */
     void sendSubNegotiation(int optionId, ByteBuffer data);
+
+    /**
+     * Starts building a sub-negotiation, which is sent by {@link SubNegotiationFrameBuilder#send()}.  The builder is
+     * shared, so each frame must be sent before the next one is started.  While a writer returned by {@link #open(int)}
+     * is open, sent frames are held until the writer is closed.
+     *
+     * The default implementation builds each frame in its own buffer, and sends its data with
+     * {@link #sendSubNegotiation(int, ByteBuffer)}.
+     *
+     * @param optionId the option id.
+     *
+     * @return the builder, with IAC SB <i>optionId</i> already written.
+     */
+    default SubNegotiationFrameBuilder frame(int optionId) {
+        return WholeSubNegotiations.frame(this, optionId);
+    }
+
+    /**
+     * Starts a sub-negotiation which is sent in pieces.  IAC SB <i>optionId</i> is sent immediately, and IAC SE is sent
+     * when the writer is closed.  Option commands and other sub-negotiations sent by the session in the meantime are
+     * held until then.
+     *
+     * The default implementation collects the whole sub-negotiation, and sends its data with
+     * {@link #sendSubNegotiation(int, ByteBuffer)} when the writer is closed.
+     *
+     * @param optionId the option id.
+     *
+     * @return the writer for the sub-negotiation data.
+     *
+     * @throws IllegalStateException if a previously opened writer hasn't been closed yet.
+     */
+    default SubNegotiationWriter open(int optionId) {
+        return WholeSubNegotiations.open(this, optionId);
+    }
+
+    /**
+     * Runs an action once no writer returned by {@link #open(int)} is open: straight away if there is none, otherwise
+     * just after it has been closed.  This is for output which can't be held back a piece at a time, such as a batch
+     * of writes from other threads.
+     *
+     * The default implementation runs the action straight away.
+     *
+     * @param action the action.
+     */
+    default void afterOpenWriter(Runnable action) {
+        action.run();
+    }
 }
@@ -0,0 +1,98 @@
+package net.virtualinfinity.telnet;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Sends a sub-negotiation in pieces, for payloads which are too large to build all at once.  IAC SB <i>optionId</i>
+ * is sent when the writer is opened, each chunk is escaped and queued as soon as it's written, and {@link #close()}
+ * sends the IAC SE.
+ *
+ * Nothing else may be written to the session until the writer has been closed, otherwise it would become part of
+ * the sub-negotiation.  The session enforces this for its own output: option commands and other sub-negotiations,
+ * such as the replies sent by options, are held until the writer is closed, and opening another writer throws an
+ * {@link IllegalStateException}.
+ *
+ * Since this is a {@link WritableByteChannel}, a streaming serializer can write to it through
+ * {@link java.nio.channels.Channels#newOutputStream(WritableByteChannel)}.  Producers of large payloads should check
+ * {@link #isWritable()} between chunks, and wait for {@link SessionListener#writabilityChanged(boolean)} if it's false.
+ *
+ * @see SubNegotiationOutputChannel#open(int)
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class SubNegotiationWriter implements WritableByteChannel {
+    private final Consumer<ByteBuffer> output;
+    private final BooleanSupplier writability;
+    private final Runnable closed;
+    private final IacScanner scanner = IacScanner.preferred();
+    private boolean open = true;
+
+    /**
+     * Sends IAC SB <i>optionId</i> and creates a writer for the rest of the sub-negotiation.
+     *
+     * @param output the raw output.
+     * @param writability whether the session is below its high watermark.
+     * @param optionId the option id.
+     * @param closed run after the IAC SE has been sent.
+     */
+    SubNegotiationWriter(Consumer<ByteBuffer> output, BooleanSupplier writability, int optionId, Runnable closed) {
+        this.output = output;
+        this.writability = writability;
+        this.closed = closed;
+        output.accept(ByteBuffer.wrap(new byte[]{TelnetConstants.IAC, TelnetConstants.SB, (byte) optionId}));
+    }
+
+    /**
+     * Escapes and queues all of the remaining data in the buffer.  The data is copied, so the buffer may be reused
+     * as soon as this returns.
+     *
+     * @param data the chunk of the payload.
+     *
+     * @return the number of bytes consumed from the buffer, which is all of them.
+     *
+     * @throws ClosedChannelException if this writer has been closed.
+     */
+    @Override
+    public int write(ByteBuffer data) throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        final int length = data.remaining();
+        if (length > 0) {
+            output.accept(OutputChannel.escape(data, scanner, true));
+            data.position(data.limit());
+        }
+        return length;
+    }
+
+    /**
+     * @return false if the session's output is above its high watermark, and the producer should wait before
+     * writing more.
+     *
+     * @see Session#isWritable()
+     */
+    public boolean isWritable() {
+        return writability.getAsBoolean();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Ends the sub-negotiation by sending IAC SE.  Closing a closed writer has no effect.
+     */
+    @Override
+    public void close() {
+        if (open) {
+            open = false;
+            output.accept(ByteBuffer.wrap(new byte[]{TelnetConstants.IAC, TelnetConstants.SE}));
+            closed.run();
+        }
+    }
+}
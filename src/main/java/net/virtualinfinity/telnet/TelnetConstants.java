@@ -6,6 +6,10 @@ package net.virtualinfinity.telnet;
  * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
  */
 public class TelnetConstants {
+    public static final byte EOF       = (byte)236;
+    public static final byte SUSP      = (byte)237;
+    public static final byte ABORT     = (byte)238;
+    public static final byte EOR       = (byte)239;
     public static final byte SE        = (byte)240;
     public static final byte NOP       = (byte)241;
     public static final byte DATA_MARK = (byte)242;
@@ -32,6 +36,10 @@ public class TelnetConstants {
      */
     public static String name(byte input) {
         switch (input) {
+            case EOF      : return "EOF";
+            case SUSP     : return "SUSP";
+            case ABORT    : return "ABORT";
+            case EOR      : return "EOR";
             case SE       : return "SE";
             case NOP      : return "NOP";
             case DATA_MARK: return "DATA_MARK";
@@ -0,0 +1,44 @@
+package net.virtualinfinity.telnet;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes a telnet stream onto an {@link EventTape}, for callers which do their own reading rather than using a
+ * {@link Session}, such as proxies or protocol analyzers.
+ *
+ * A decoder keeps the state of the stream between calls, so commands may be split across reads.  Escaped IACs are
+ * unescaped in place, so the contents of a writable buffer between its position and limit may be modified, and the
+ * data events on the tape refer to the modified contents.  Each call consumes the whole of the buffer.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class TelnetDecoder {
+    // Only the tape is used, so there is no receiver.
+    private final InputChannelDecoder decoder = new InputChannelDecoder(null);
+
+    /**
+     * Decodes the received data, appending its events to the tape.
+     *
+     * @param inputBuffer the received data.
+     * @param eventTape the tape to append the events to.
+     */
+    public void decode(ByteBuffer inputBuffer, EventTape eventTape) {
+        decoder.decode(inputBuffer, eventTape);
+    }
+
+    /**
+     * Decodes the buffers filled by a scattering read, in order, appending their events to the tape.  Commands may be
+     * split across the boundaries between buffers.  The argument of each data event is the index of the buffer which
+     * contains it.
+     *
+     * @param inputBuffers the received data.
+     * @param offset the index of the first buffer to decode.
+     * @param length the number of buffers to decode.
+     * @param eventTape the tape to append the events to.
+     *
+     * @see java.nio.channels.ScatteringByteChannel#read(ByteBuffer[], int, int)
+     */
+    public void decode(ByteBuffer[] inputBuffers, int offset, int length, EventTape eventTape) {
+        decoder.decode(inputBuffers, offset, length, eventTape);
+    }
+}
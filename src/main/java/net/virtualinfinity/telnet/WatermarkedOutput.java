@@ -0,0 +1,124 @@
+package net.virtualinfinity.telnet;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Passes buffers on to the raw output, keeping track of how many bytes haven't been sent yet.  The output consumes
+ * each buffer as it's sent, in order, so only the oldest unsent buffers need to be examined.
+ *
+ * The session becomes unwritable when more than the high watermark is waiting to be sent, and writable again once it
+ * has drained to the low watermark.  Bytes which are being held back, such as while corked, count as waiting to be
+ * sent.  The listener is informed of each change.  The writability is re-evaluated on each write, and by
+ * {@link #update()}, which the {@link FlowControlledChannel} calls each time the socket has been written to.
+ *
+ * @see SessionListener#writabilityChanged(boolean)
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+final class WatermarkedOutput implements Consumer<ByteBuffer> {
+    private final Consumer<ByteBuffer> output;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final SessionListener listener;
+
+    private ByteBuffer[] buffers = new ByteBuffer[16];
+    private int[] lengths = new int[16];
+    private int head;
+    private int count;
+    private long queued;
+    private long held;
+    private boolean writable = true;
+
+    /**
+     * @param output the raw output.
+     * @param lowWatermark the number of unsent bytes at or below which the session becomes writable again.
+     * @param highWatermark the number of unsent bytes above which the session becomes unwritable.
+     * @param listener the listener to inform of writability changes.
+     */
+    WatermarkedOutput(Consumer<ByteBuffer> output, int lowWatermark, int highWatermark, SessionListener listener) {
+        if (lowWatermark < 0 || highWatermark < lowWatermark) {
+            throw new IllegalArgumentException("Invalid watermarks: low=" + lowWatermark + ", high=" + highWatermark);
+        }
+        this.output = output;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.listener = listener;
+    }
+
+    @Override
+    public void accept(ByteBuffer buffer) {
+        final int length = buffer.remaining();
+        output.accept(buffer);
+        if (buffer.hasRemaining()) {
+            add(buffer, length);
+        }
+        update();
+    }
+
+    /**
+     * Counts bytes which have been written but are being held back before reaching this output, such as while the
+     * session is corked.
+     *
+     * @param bytes the number of bytes newly held, or negative for held bytes which are about to be passed to
+     * {@link #accept(ByteBuffer)}.
+     */
+    void hold(int bytes) {
+        held += bytes;
+        // Released bytes are re-counted by the write which follows, so only re-evaluate when more are held.
+        if (bytes > 0) {
+            update();
+        }
+    }
+
+    /**
+     * @return the number of bytes which have been written but not yet sent.
+     */
+    long unsentBytes() {
+        while (count > 0 && !buffers[head].hasRemaining()) {
+            queued -= lengths[head];
+            buffers[head] = null;
+            head = (head + 1) & (buffers.length - 1);
+            --count;
+        }
+        return held + (count == 0 ? 0 : queued - (lengths[head] - buffers[head].remaining()));
+    }
+
+    /**
+     * Re-evaluates the writability, informing the listener if it has changed.
+     *
+     * @return whether the session is currently writable.
+     */
+    boolean update() {
+        final long unsent = unsentBytes();
+        if (writable ? unsent > highWatermark : unsent <= lowWatermark) {
+            writable = !writable;
+            listener.writabilityChanged(writable);
+        }
+        return writable;
+    }
+
+    private void add(ByteBuffer buffer, int length) {
+        if (count == buffers.length) {
+            grow();
+        }
+        final int tail = (head + count) & (buffers.length - 1);
+        buffers[tail] = buffer;
+        lengths[tail] = length;
+        ++count;
+        queued += length;
+    }
+
+    private void grow() {
+        final ByteBuffer[] newBuffers = new ByteBuffer[buffers.length * 2];
+        final int[] newLengths = new int[lengths.length * 2];
+        for (int i = 0; i < count; ++i) {
+            final int index = (head + i) & (buffers.length - 1);
+            newBuffers[i] = buffers[index];
+            newLengths[i] = lengths[index];
+        }
+        buffers = newBuffers;
+        lengths = newLengths;
+        head = 0;
+    }
+}
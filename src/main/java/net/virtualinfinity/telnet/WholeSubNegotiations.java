@@ -0,0 +1,65 @@
+package net.virtualinfinity.telnet;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * The default implementations of {@link SubNegotiationOutputChannel#frame(int)} and
+ * {@link SubNegotiationOutputChannel#open(int)}, for channels which can only send a whole sub-negotiation at once.
+ * The encoded frame is collected, and its data is decoded again and passed to
+ * {@link SubNegotiationOutputChannel#sendSubNegotiation(int, ByteBuffer)}.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+final class WholeSubNegotiations {
+    private WholeSubNegotiations() {
+    }
+
+    static SubNegotiationFrameBuilder frame(SubNegotiationOutputChannel channel, int optionId) {
+        return new SubNegotiationFrameBuilder(frame -> channel.sendSubNegotiation(optionId, decode(frame))).start(optionId);
+    }
+
+    static SubNegotiationWriter open(SubNegotiationOutputChannel channel, int optionId) {
+        final Collector collector = new Collector();
+        return new SubNegotiationWriter(collector, () -> true, optionId, () -> channel.sendSubNegotiation(optionId, decode(collector.frame())));
+    }
+
+    /**
+     * @param frame an encoded sub-negotiation, from IAC SB <i>optionId</i> to IAC SE.
+     *
+     * @return the data, with IACs unescaped.
+     */
+    private static ByteBuffer decode(ByteBuffer frame) {
+        final ByteBuffer data = ByteBuffer.allocate(frame.remaining() - 5);
+        final int end = frame.limit() - 2;
+        for (int index = frame.position() + 3; index < end; ++index) {
+            final byte value = frame.get(index);
+            data.put(value);
+            if (value == TelnetConstants.IAC) {
+                ++index;
+            }
+        }
+        data.flip();
+        return data;
+    }
+
+    private static final class Collector implements Consumer<ByteBuffer> {
+        private ByteBuffer frame = ByteBuffer.allocate(64);
+
+        @Override
+        public void accept(ByteBuffer data) {
+            if (data.remaining() > frame.remaining()) {
+                final ByteBuffer grown = ByteBuffer.allocate(Math.max(frame.capacity() * 2, frame.position() + data.remaining()));
+                frame.flip();
+                grown.put(frame);
+                frame = grown;
+            }
+            frame.put(data);
+        }
+
+        ByteBuffer frame() {
+            frame.flip();
+            return frame;
+        }
+    }
+}
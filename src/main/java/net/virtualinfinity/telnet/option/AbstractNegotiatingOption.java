@@ -3,6 +3,7 @@ package net.virtualinfinity.telnet.option;
 import net.virtualinfinity.telnet.Option;
 import net.virtualinfinity.telnet.OptionHandle;
 import net.virtualinfinity.telnet.Session;
+import net.virtualinfinity.telnet.SubNegotiationFrameBuilder;
 import net.virtualinfinity.telnet.SubNegotiationOutputChannel;
 
 import java.nio.ByteBuffer;
@@ -51,6 +52,13 @@ abstract class AbstractNegotiatingOption {
         outputChannel.sendSubNegotiation(optionHandle.optionCode(), data);
     }
 
+    /**
+     * @return a builder for a sub-negotiation for this option, to be finished with {@link SubNegotiationFrameBuilder#send()}.
+     */
+    protected SubNegotiationFrameBuilder subNegotiationFrame() {
+        return outputChannel.frame(optionHandle.optionCode());
+    }
+
     /**
      * @return the SubNegotiationListener that handles this option, or null if no sub-negotiation is needed.
      */
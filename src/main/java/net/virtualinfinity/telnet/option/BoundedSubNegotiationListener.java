@@ -0,0 +1,89 @@
+package net.virtualinfinity.telnet.option;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A base class for sub-negotiation listeners which parse the whole sub-negotiation once it has ended.  The data is
+ * accumulated in a buffer of a fixed maximum size, which is allocated once and reused for every sub-negotiation, so
+ * a peer sending an oversized sub-negotiation can't make us use more memory or create garbage.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public abstract class BoundedSubNegotiationListener implements SubNegotiationListener {
+    private final ByteBuffer buffer;
+    private final ByteBuffer view;
+    private final OverflowPolicy overflowPolicy;
+    private boolean overflowed;
+    private long overflows;
+
+    /**
+     * What to do with a sub-negotiation which is larger than the maximum size.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Parse the data which fits, and ignore the rest.
+         */
+        TRUNCATE,
+        /**
+         * Ignore the whole sub-negotiation.
+         */
+        DROP,
+    }
+
+    /**
+     * @param maxSize the maximum number of bytes of data in a sub-negotiation.
+     * @param overflowPolicy what to do with sub-negotiations which are larger than that.
+     */
+    protected BoundedSubNegotiationListener(int maxSize, OverflowPolicy overflowPolicy) {
+        this.buffer = ByteBuffer.allocate(maxSize);
+        this.view = buffer.asReadOnlyBuffer();
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Called with the data of each complete sub-negotiation.
+     *
+     * @param data a read-only view of the data, between the IAC SB <i>option</i> and the IAC SE.  The buffer is reused,
+     *             so it's only valid during this call.
+     */
+    protected abstract void subNegotiation(ByteBuffer data);
+
+    /**
+     * @return the number of sub-negotiations which were larger than the maximum size.
+     */
+    public long overflows() {
+        return overflows;
+    }
+
+    @Override
+    public void startSubNegotiation() {
+        buffer.clear();
+        overflowed = false;
+    }
+
+    @Override
+    public void subNegotiationData(ByteBuffer data) {
+        if (!overflowed) {
+            final int length = Math.min(data.remaining(), buffer.remaining());
+            final int limit = data.limit();
+            data.limit(data.position() + length);
+            buffer.put(data);
+            data.limit(limit);
+            if (data.hasRemaining()) {
+                overflowed = true;
+                ++overflows;
+            }
+        }
+        data.position(data.limit());
+    }
+
+    @Override
+    public void endSubNegotiation() {
+        if (overflowed && overflowPolicy == OverflowPolicy.DROP) {
+            return;
+        }
+        view.limit(buffer.position());
+        view.position(0);
+        subNegotiation(view);
+    }
+}
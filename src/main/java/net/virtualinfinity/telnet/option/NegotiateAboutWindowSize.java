@@ -19,7 +19,9 @@ import java.util.Collection;
 public final class NegotiateAboutWindowSize extends AbstractNegotiatingOption implements WindowSizeListener {
     private final Collection<WindowSizeListener> windowSizeListeners = new ArrayList<>();
 
-    private final ByteBuffer outgoingData = ByteBuffer.allocate(4);
+    private boolean hasWindowSize;
+    private int width;
+    private int height;
 
     private NegotiateAboutWindowSize(Session session) {
         super(session, Option.NEGOTIATE_ABOUT_WINDOW_SIZE);
@@ -137,9 +139,9 @@ public final class NegotiateAboutWindowSize extends AbstractNegotiatingOption im
      * @param height the new window height
      */
     public void setWindowSize(int width, int height) {
-        outgoingData.clear();
-        outgoingData.order(ByteOrder.BIG_ENDIAN).putShort((short) width).putShort((short) height);
-        outgoingData.flip();
+        this.width = width;
+        this.height = height;
+        hasWindowSize = true;
         sendUpdate();
     }
 
@@ -147,8 +149,8 @@ public final class NegotiateAboutWindowSize extends AbstractNegotiatingOption im
      * Sends the update if we have one and the option is enabled.
      */
     private void sendUpdate() {
-        if (optionHandle.isEnabledLocally() && outgoingData.hasRemaining()) {
-            sendSubNegotiation(outgoingData.asReadOnlyBuffer());
+        if (optionHandle.isEnabledLocally() && hasWindowSize) {
+            subNegotiationFrame().putShort(width).putShort(height).send();
         }
     }
 
@@ -185,29 +187,20 @@ public final class NegotiateAboutWindowSize extends AbstractNegotiatingOption im
     }
 
     /**
-     * Manages listening for incoming NAWS reports.
+     * Manages listening for incoming NAWS reports.  Reports of any size other than four bytes are ignored.
      */
-    private class MySubNegotiationListener implements SubNegotiationListener {
-        private final ByteBuffer incomingData = ByteBuffer.allocate(4);
-
-        @Override
-        public void startSubNegotiation() {
-            incomingData.clear();
-        }
-
-        @Override
-        public void subNegotiationData(ByteBuffer data) {
-            incomingData.put(data);
+    private class MySubNegotiationListener extends BoundedSubNegotiationListener {
+        MySubNegotiationListener() {
+            super(4, OverflowPolicy.DROP);
         }
 
         @Override
-        public void endSubNegotiation() {
-            incomingData.flip();
-            if (incomingData.remaining() == 4) {
-                incomingData.order(ByteOrder.BIG_ENDIAN);
+        protected void subNegotiation(ByteBuffer data) {
+            if (data.remaining() == 4) {
+                data.order(ByteOrder.BIG_ENDIAN);
                 // 0xFFFFF is to force unsigned short.
-                final int width = incomingData.getShort() & 0xFFFF;
-                final int height = incomingData.getShort() & 0xFFFF;
+                final int width = data.getShort() & 0xFFFF;
+                final int height = data.getShort() & 0xFFFF;
                 for (final WindowSizeListener listener : windowSizeListeners) {
                     listener.windowSizeReported(width, height);
                 }
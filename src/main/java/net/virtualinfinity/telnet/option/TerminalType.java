@@ -1,11 +1,11 @@
 package net.virtualinfinity.telnet.option;
 
-import net.virtualinfinity.nio.BufferUtils;
 import net.virtualinfinity.telnet.Option;
 import net.virtualinfinity.telnet.Session;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -117,88 +117,35 @@ public class TerminalType extends AbstractNegotiatingOption {
         return null;
     }
 
-    private static class MySubNegotiationListener implements SubNegotiationListener {
+    /**
+     * Handles TTYPE SEND requests, and TTYPE IS reports of up to 40 characters.  Longer reports are truncated.
+     */
+    private static class MySubNegotiationListener extends BoundedSubNegotiationListener {
         private final TerminalType terminalType;
-        private State state = State.INITIAL;
+        private final byte[] name = new byte[40];
 
         public MySubNegotiationListener(TerminalType terminalType) {
+            super(41, OverflowPolicy.TRUNCATE);
             this.terminalType = terminalType;
         }
 
-        private final ByteBuffer input = ByteBuffer.allocate(40);
-
-        @Override
-        public void startSubNegotiation() {
-        }
-
         @Override
-        public void subNegotiationData(ByteBuffer data) {
-            state = state.data(data, this);
-        }
-
-        @Override
-        public void endSubNegotiation() {
-            state.finish(this);
-        }
-
-        enum State {
-            INITIAL {
-
-                @Override
-                public State data(ByteBuffer data, MySubNegotiationListener snl) {
+        protected void subNegotiation(ByteBuffer data) {
+            if (!data.hasRemaining()) {
+                return;
+            }
+            switch (data.get()) {
+                case TTYPE_IS:
+                    final int length = data.remaining();
+                    data.get(name, 0, length);
+                    terminalType.terminalTypeReported(new String(name, 0, length, StandardCharsets.US_ASCII));
+                    break;
+                case TTYPE_SEND:
                     if (!data.hasRemaining()) {
-                        return this;
-                    }
-                    switch (data.get()) {
-                        case TTYPE_IS:
-                            return IS.data(data, snl);
-                        case TTYPE_SEND:
-                            snl.terminalType.sendNext();
-                            return SENT_NEXT.data(data, snl);
-                    }
-                    data.position(data.position()-1);
-                    return ERROR.data(data, snl);
-                }
-            },
-            IS {
-                @Override
-                public State data(ByteBuffer data, MySubNegotiationListener snl) {
-                    BufferUtils.putWhatFits(snl.input, data);
-                    return this;
-                }
-
-                @Override
-                public void finish(MySubNegotiationListener snl) {
-                    snl.input.flip();
-                    final byte[] bytes = new byte[snl.input.remaining()];
-                    snl.input.put(bytes);
-                    snl.terminalType.terminalTypeReported(new String(bytes, Charset.forName("US-ASCII")));
-                }
-            },
-            SENT_NEXT {
-                @Override
-                public State data(ByteBuffer data, MySubNegotiationListener snl) {
-                    if (data.hasRemaining()) {
-                        return ERROR;
-                    } else {
-                        return this;
+                        terminalType.sendNext();
                     }
-                }
-            },
-            ERROR {
-                @Override
-                public State data(ByteBuffer data, MySubNegotiationListener snl) {
-                    return this;
-                }
-            },;
-
-            public abstract State data(ByteBuffer data, MySubNegotiationListener snl);
-
-            public void finish(MySubNegotiationListener snl) {
-
+                    break;
             }
         }
     }
-
-
 }
@@ -0,0 +1,53 @@
+package net.virtualinfinity.telnet;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Locates IAC bytes by comparing a whole vector of bytes at once.  This is only loaded on Java 17 or later, when the
+ * <code>jdk.incubator.vector</code> module has been added (for example with
+ * <code>--add-modules jdk.incubator.vector</code>).
+ *
+ * Vectors are loaded from the backing array, so only buffers with an accessible array are scanned this way.  Direct
+ * and read-only buffers, and the tail which doesn't fill a whole vector, are handled by the word-at-a-time scanner.
+ *
+ * @see IacScanner#preferred()
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+final class VectorIacScanner extends IacScanner {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    VectorIacScanner() {
+        // Fail now, while the preferred scanner is being chosen, rather than on the first read.
+        indexOfIAC(new byte[SPECIES.length()], 0, SPECIES.length());
+    }
+
+    @Override
+    int indexOfIAC(ByteBuffer buffer, int from, int to) {
+        if (!buffer.hasArray()) {
+            return super.indexOfIAC(buffer, from, to);
+        }
+        final int offset = buffer.arrayOffset();
+        final int found = indexOfIAC(buffer.array(), from + offset, to + offset);
+        if (found >= 0) {
+            return found - offset;
+        }
+        final int tail = to - (to - from) % SPECIES.length();
+        return super.indexOfIAC(buffer, tail, to);
+    }
+
+    private static int indexOfIAC(byte[] array, int from, int to) {
+        for (int index = from, last = to - SPECIES.length(); index <= last; index += SPECIES.length()) {
+            final VectorMask<Byte> found = ByteVector.fromArray(SPECIES, array, index).compare(VectorOperators.EQ, TelnetConstants.IAC);
+            if (found.anyTrue()) {
+                return index + found.firstTrue();
+            }
+        }
+        return -1;
+    }
+}
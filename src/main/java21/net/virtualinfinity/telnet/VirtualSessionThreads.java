@@ -0,0 +1,19 @@
+package net.virtualinfinity.telnet;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates a virtual thread for each blocking session handler.  This is only loaded on Java 21 or later.
+ *
+ * @see BlockingSession
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+final class VirtualSessionThreads implements ThreadFactory {
+    private final ThreadFactory factory = Thread.ofVirtual().name("telnet-session-", 0).factory();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        return factory.newThread(runnable);
+    }
+}
@@ -0,0 +1,207 @@
+package net.virtualinfinity.telnet;
+
+import org.jmock.Expectations;
+import org.jmock.api.Action;
+import org.jmock.api.Invocation;
+import org.jmock.auto.Mock;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.jmock.lib.action.CustomAction;
+import org.jmock.lib.concurrent.Synchroniser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class BlockingSessionTest {
+    private static final byte IAC = TelnetConstants.IAC;
+
+    @Rule
+    public JUnitRuleMockery context = new JUnitRuleMockery() {{
+        setThreadingPolicy(new Synchroniser());
+    }};
+
+    @Mock
+    private Session session;
+
+    private final ExecutorService loop = Executors.newSingleThreadExecutor();
+    /**
+     * Only used on the loop thread.
+     */
+    private final List<ByteBuffer> written = new ArrayList<>();
+    private final Semaphore writtenBytes = new Semaphore(0);
+
+    @Before
+    public void setUp() {
+        final Consumer<ByteBuffer> output = buffer -> {
+            written.add(buffer);
+            writtenBytes.release(buffer.remaining());
+        };
+        final OutputChannel outputChannel = new OutputChannel(output);
+        final SubNegotiationOutputChannel subNegotiations = new OptionCommandManagerImpl(output).subNegotiationOutputChannel(() -> true);
+        context.checking(new Expectations() {{
+            allowing(session).outputChannel();
+            will(returnValue(outputChannel));
+            allowing(session).subNegotiationOutputChannel();
+            will(returnValue(subNegotiations));
+            allowing(session).cork();
+            allowing(session).uncork();
+        }});
+    }
+
+    @After
+    public void tearDown() {
+        loop.shutdownNow();
+    }
+
+    @Test
+    public void echoesUntilClosed() throws Exception {
+        final CountDownLatch closed = expectCloses(1);
+        final BlockingSession blocking = new BlockingSession(echo(), loop);
+        onLoop(() -> blocking.connected(session));
+        onLoop(() -> blocking.incomingData(ByteBuffer.wrap(new byte[]{'a', IAC, 'b'})));
+        onLoop(() -> blocking.incomingData(ByteBuffer.wrap(new byte[]{'c'})));
+        assertTrue(writtenBytes.tryAcquire(5, 5, TimeUnit.SECONDS));
+        onLoop(blocking::connectionClosed);
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertEquals(ByteBuffer.wrap(new byte[]{'a', IAC, IAC, 'b', 'c'}), onLoop(this::allWritten));
+    }
+
+    @Test
+    public void disconnectsWhenInputOverflows() throws Exception {
+        // Once for the overflow, and once when the handler returns.
+        final CountDownLatch closed = expectCloses(2);
+        final BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+        final CountDownLatch overflowed = new CountDownLatch(1);
+        final BlockingSession blocking = new BlockingSession(session -> {
+            results.add(session.inputStream().read());
+            try {
+                overflowed.await();
+                while (session.inputStream().read() >= 0) {
+                    results.add("data");
+                }
+            } catch (final IOException | InterruptedException e) {
+                results.add(e);
+            }
+        }, loop, 4, 1024);
+        onLoop(() -> {
+            blocking.connected(session);
+            blocking.incomingData(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}));
+        });
+        assertEquals(1, results.poll(5, TimeUnit.SECONDS));
+        onLoop(() -> blocking.incomingData(ByteBuffer.wrap(new byte[]{5, 6})));
+        overflowed.countDown();
+        assertEquals("data", results.poll(5, TimeUnit.SECONDS));
+        assertEquals("data", results.poll(5, TimeUnit.SECONDS));
+        assertEquals("data", results.poll(5, TimeUnit.SECONDS));
+        assertTrue(results.poll(5, TimeUnit.SECONDS) instanceof IOException);
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void wrapsAroundInputBuffer() throws Exception {
+        final CountDownLatch closed = expectCloses(1);
+        final BlockingQueue<Integer> read = new LinkedBlockingQueue<>();
+        final BlockingSession blocking = new BlockingSession(session -> {
+            for (int b = session.inputStream().read(); b >= 0; b = session.inputStream().read()) {
+                read.add(b);
+            }
+        }, loop, 4, 1024);
+        onLoop(() -> blocking.connected(session));
+        for (int i = 0; i < 10; ++i) {
+            final byte[] data = {(byte) (i * 3), (byte) (i * 3 + 1), (byte) (i * 3 + 2)};
+            onLoop(() -> blocking.incomingData(ByteBuffer.wrap(data)));
+            for (int j = 0; j < 3; ++j) {
+                assertEquals(Integer.valueOf(i * 3 + j), read.poll(5, TimeUnit.SECONDS));
+            }
+        }
+        onLoop(blocking::connectionClosed);
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void writerWaitsForWritability() throws Exception {
+        final CountDownLatch closed = expectCloses(1);
+        final CountDownLatch wrote = new CountDownLatch(1);
+        final BlockingSession blocking = new BlockingSession(session -> {
+            session.outputStream().write('x');
+            wrote.countDown();
+        }, loop);
+        onLoop(() -> {
+            blocking.writabilityChanged(false);
+            blocking.connected(session);
+        });
+        assertFalse(wrote.await(100, TimeUnit.MILLISECONDS));
+        onLoop(() -> blocking.writabilityChanged(true));
+        assertTrue(wrote.await(5, TimeUnit.SECONDS));
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertEquals(ByteBuffer.wrap(new byte[]{'x'}), onLoop(this::allWritten));
+    }
+
+    private CountDownLatch expectCloses(int closes) throws IOException {
+        final CountDownLatch closed = new CountDownLatch(closes);
+        context.checking(new Expectations() {{
+            exactly(closes).of(session).close();
+            will(countDown(closed));
+        }});
+        return closed;
+    }
+
+    private static Action countDown(CountDownLatch latch) {
+        return new CustomAction("count down") {
+            @Override
+            public Object invoke(Invocation invocation) {
+                latch.countDown();
+                return null;
+            }
+        };
+    }
+
+    private static BlockingSession.Handler echo() {
+        return session -> {
+            final InputStream in = session.inputStream();
+            final OutputStream out = session.outputStream();
+            final byte[] buffer = new byte[16];
+            for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+                out.write(buffer, 0, count);
+            }
+        };
+    }
+
+    private ByteBuffer allWritten() {
+        final ByteBuffer all = ByteBuffer.allocate(written.stream().mapToInt(ByteBuffer::remaining).sum());
+        written.forEach(buffer -> all.put(buffer.duplicate()));
+        all.flip();
+        return all;
+    }
+
+    private void onLoop(Runnable task) throws Exception {
+        loop.submit(task).get(5, TimeUnit.SECONDS);
+    }
+
+    private <T> T onLoop(Callable<T> task) throws Exception {
+        return loop.submit(task).get(5, TimeUnit.SECONDS);
+    }
+}
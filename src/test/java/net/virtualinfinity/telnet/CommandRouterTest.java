@@ -11,6 +11,8 @@ import java.nio.ByteBuffer;
 import java.util.function.Consumer;
 import java.util.function.ObjIntConsumer;
 
+import static org.junit.Assert.assertEquals;
+
 /**
  * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
  */
@@ -32,44 +34,95 @@ public class CommandRouterTest {
     @Test
     public void testReceivedBreak() throws Exception {
         context.checking(oneOf(sessionListener, SessionListener::doBreak));
-        commandRouter().receivedBreak();
+        commandRouter().receivedCommand(TelnetConstants.BRK & 0xFF);
     }
 
 
     @Test
     public void testReceivedInterrupt() throws Exception {
         context.checking(oneOf(sessionListener, SessionListener::doInterrupt));
-        commandRouter().receivedInterrupt();
+        commandRouter().receivedCommand(TelnetConstants.IP & 0xFF);
     }
 
     @Test
     public void testReceivedAbortOutput() throws Exception {
         context.checking(oneOf(sessionListener, SessionListener::doAbortOutput));
-        commandRouter().receivedAbortOutput();
+        commandRouter().receivedCommand(TelnetConstants.AO & 0xFF);
     }
 
     @Test
     public void testReceivedAreYouThere() throws Exception {
         context.checking(oneOf(sessionListener, SessionListener::doAreYouThere));
-        commandRouter().receivedAreYouThere();
+        commandRouter().receivedCommand(TelnetConstants.AYT & 0xFF);
     }
 
     @Test
     public void testReceivedEraseCharacter() throws Exception {
         context.checking(oneOf(sessionListener, SessionListener::doEraseCharacter));
-        commandRouter().receivedEraseCharacter();
+        commandRouter().receivedCommand(TelnetConstants.EC & 0xFF);
     }
 
     @Test
     public void testReceivedEraseLine() throws Exception {
         context.checking(oneOf(sessionListener, SessionListener::doEraseLine));
-        commandRouter().receivedEraseLine();
+        commandRouter().receivedCommand(TelnetConstants.EL & 0xFF);
     }
 
     @Test
     public void testReceivedGoAhead() throws Exception {
         context.checking(oneOf(sessionListener, SessionListener::doGoAhead));
-        commandRouter().receivedGoAhead();
+        commandRouter().receivedCommand(TelnetConstants.GA & 0xFF);
+    }
+
+    @Test
+    public void testReceivedDataMark() throws Exception {
+        context.checking(oneOf(sessionListener, SessionListener::doDataMark));
+        commandRouter().receivedCommand(TelnetConstants.DATA_MARK & 0xFF);
+    }
+
+    @Test
+    public void testReceivedEndOfRecord() throws Exception {
+        context.checking(oneOf(sessionListener, SessionListener::doEndOfRecord));
+        commandRouter().receivedCommand(TelnetConstants.EOR & 0xFF);
+    }
+
+    @Test
+    public void testReceivedAbort() throws Exception {
+        context.checking(oneOf(sessionListener, SessionListener::doAbort));
+        commandRouter().receivedCommand(TelnetConstants.ABORT & 0xFF);
+    }
+
+    @Test
+    public void testReceivedSuspend() throws Exception {
+        context.checking(oneOf(sessionListener, SessionListener::doSuspend));
+        commandRouter().receivedCommand(TelnetConstants.SUSP & 0xFF);
+    }
+
+    @Test
+    public void testReceivedEndOfFile() throws Exception {
+        context.checking(oneOf(sessionListener, SessionListener::doEndOfFile));
+        commandRouter().receivedCommand(TelnetConstants.EOF & 0xFF);
+    }
+
+    @Test
+    public void testReceivedCommandIsCounted() throws Exception {
+        final CommandTable commands = CommandTable.forListener(sessionListener);
+        final CommandRouter commandRouter = new CommandRouter(commands, commandManager, optionCommandManager);
+        commandRouter.receivedCommand(TelnetConstants.NOP & 0xFF);
+        commandRouter.receivedCommand(TelnetConstants.NOP & 0xFF);
+        commandRouter.receivedCommand(1);
+        assertEquals(2, commands.count(TelnetConstants.NOP & 0xFF));
+        assertEquals(1, commands.count(1));
+    }
+
+    @Test
+    public void testReceivedCommandWithReplacedListener() throws Exception {
+        final CommandListener listener = context.mock(CommandListener.class);
+        context.checking(new Expectations() {{
+            oneOf(listener).commandReceived(TelnetConstants.GA & 0xFF);
+        }});
+        final CommandTable commands = CommandTable.forListener(sessionListener).setListener(TelnetConstants.GA, listener);
+        new CommandRouter(commands, commandManager, optionCommandManager).receivedCommand(TelnetConstants.GA & 0xFF);
     }
 
     @Test
@@ -84,12 +137,6 @@ public class CommandRouterTest {
         commandRouter().receivedData(ByteBuffer.wrap(DATA));
     }
 
-    @Test
-    public void testReceivedIAC() throws Exception {
-        context.checking(oneOf(commandManager, SubNegotiationDataRouter::receivedIAC));
-        commandRouter().receivedIAC();
-    }
-
     @Test
     public void testReceivedStartSubNegotiation() throws Exception {
         context.checking(new Expectations() {{
@@ -124,7 +171,7 @@ public class CommandRouterTest {
     }
 
     private CommandRouter commandRouter() {
-        return new CommandRouter(sessionListener, commandManager, optionCommandManager);
+        return new CommandRouter(CommandTable.forListener(sessionListener), commandManager, optionCommandManager);
     }
 
     private  <T> Expectations oneOf(final T mock, final Consumer<T> action) {
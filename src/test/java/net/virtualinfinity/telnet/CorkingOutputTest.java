@@ -0,0 +1,60 @@
+package net.virtualinfinity.telnet;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class CorkingOutputTest {
+    private final List<ByteBuffer> written = new ArrayList<>();
+    private final CorkingOutput output = new CorkingOutput(written::add);
+
+    @Test
+    public void passesThroughWhenNotCorked() {
+        final ByteBuffer buffer = ByteBuffer.wrap(new byte[]{1});
+        output.accept(buffer);
+        assertEquals(1, written.size());
+        assertSame(buffer, written.get(0));
+    }
+
+    @Test
+    public void combinesSmallWritesWhenUncorked() {
+        output.cork();
+        output.accept(ByteBuffer.wrap(new byte[]{1, 2}));
+        output.cork();
+        output.accept(ByteBuffer.wrap(new byte[]{3}));
+        output.uncork();
+        output.accept(ByteBuffer.wrap(new byte[]{4, 5}));
+        assertEquals(0, written.size());
+        output.uncork();
+        assertEquals(1, written.size());
+        assertEquals(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5}), written.get(0));
+    }
+
+    @Test
+    public void passesLargeBuffersThroughUncopied() {
+        final ByteBuffer large = ByteBuffer.allocate(CorkingOutput.COALESCE_LIMIT);
+        output.cork();
+        output.accept(ByteBuffer.wrap(new byte[]{1}));
+        output.accept(ByteBuffer.wrap(new byte[]{2}));
+        output.accept(large);
+        output.accept(ByteBuffer.wrap(new byte[]{3}));
+        output.uncork();
+        assertEquals(3, written.size());
+        assertEquals(ByteBuffer.wrap(new byte[]{1, 2}), written.get(0));
+        assertSame(large, written.get(1));
+        assertEquals(ByteBuffer.wrap(new byte[]{3}), written.get(2));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void uncorkWithoutCork() {
+        output.uncork();
+    }
+}
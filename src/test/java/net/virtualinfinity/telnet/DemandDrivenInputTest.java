@@ -0,0 +1,165 @@
+package net.virtualinfinity.telnet;
+
+import org.jmock.Expectations;
+import org.jmock.Sequence;
+import org.jmock.auto.Mock;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class DemandDrivenInputTest {
+    @Rule
+    public JUnitRuleMockery context = new JUnitRuleMockery();
+
+    @Mock
+    private Session session;
+
+    private final List<Object> signals = new ArrayList<>();
+    private final RecordingInput input = new RecordingInput();
+
+    @Test
+    public void deliversOnlyWhatWasRequested() {
+        ignoreReading();
+        input.connected(session);
+        input.subscribed();
+        final ByteBuffer received = ByteBuffer.wrap(new byte[]{1});
+        input.incomingData(received);
+        input.incomingData(ByteBuffer.wrap(new byte[]{2}));
+        assertEquals(0, received.remaining());
+        received.put(0, (byte) 9);
+        assertTrue(signals.isEmpty());
+        input.request(1);
+        assertEquals(1, signals.size());
+        assertEquals(ByteBuffer.wrap(new byte[]{1}), signals.get(0));
+        input.connectionClosed();
+        assertEquals(1, signals.size());
+        input.request(Long.MAX_VALUE);
+        assertEquals(ByteBuffer.wrap(new byte[]{2}), signals.get(1));
+        assertEquals("complete", signals.get(2));
+    }
+
+    @Test
+    public void completesEvenWithoutDemand() {
+        input.connectionClosed();
+        input.subscribed();
+        assertEquals("complete", signals.get(0));
+    }
+
+    @Test
+    public void moreCanBeRequestedFromNext() {
+        input.requestMoreFromNext = true;
+        input.subscribed();
+        input.incomingData(ByteBuffer.wrap(new byte[]{1}));
+        input.incomingData(ByteBuffer.wrap(new byte[]{2}));
+        input.request(1);
+        input.incomingData(ByteBuffer.wrap(new byte[]{3}));
+        assertEquals(3, signals.size());
+    }
+
+    @Test
+    public void readsOnlyWhileThereIsDemand() {
+        final Sequence reading = context.sequence("reading");
+        context.checking(new Expectations() {{
+            oneOf(session).suspendReading(); inSequence(reading);
+        }});
+        input.connected(session);
+        input.subscribed();
+        context.assertIsSatisfied();
+
+        context.checking(new Expectations() {{
+            oneOf(session).resumeReading(); inSequence(reading);
+        }});
+        input.request(2);
+        input.incomingData(ByteBuffer.wrap(new byte[]{1}));
+        context.assertIsSatisfied();
+
+        context.checking(new Expectations() {{
+            oneOf(session).suspendReading(); inSequence(reading);
+        }});
+        // The rest of the read which used up the demand is held.
+        input.incomingData(ByteBuffer.wrap(new byte[]{2}));
+        input.incomingData(ByteBuffer.wrap(new byte[]{3}));
+        assertEquals(2, signals.size());
+        context.assertIsSatisfied();
+
+        context.checking(new Expectations() {{
+            oneOf(session).resumeReading(); inSequence(reading);
+        }});
+        input.request(2);
+        assertEquals(3, signals.size());
+    }
+
+    @Test
+    public void invalidRequestFailsImmediately() throws Exception {
+        context.checking(new Expectations() {{
+            oneOf(session).close();
+            ignoring(session).suspendReading();
+            ignoring(session).resumeReading();
+        }});
+        input.connected(session);
+        input.subscribed();
+        input.incomingData(ByteBuffer.wrap(new byte[]{1}));
+        input.request(0);
+        assertEquals(1, signals.size());
+        assertTrue(signals.get(0) instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void cancelClosesSession() throws Exception {
+        context.checking(new Expectations() {{
+            oneOf(session).close();
+            ignoring(session).suspendReading();
+            ignoring(session).resumeReading();
+        }});
+        input.connected(session);
+        input.subscribed();
+        input.incomingData(ByteBuffer.wrap(new byte[]{1}));
+        input.cancel();
+        input.request(1);
+        input.connectionClosed();
+        assertTrue(signals.isEmpty());
+    }
+
+    private void ignoreReading() {
+        context.checking(new Expectations() {{
+            ignoring(session).suspendReading();
+            ignoring(session).resumeReading();
+        }});
+    }
+
+    private class RecordingInput extends DemandDrivenInput {
+        private boolean requestMoreFromNext;
+
+        RecordingInput() {
+            super(Runnable::run);
+        }
+
+        @Override
+        void next(ByteBuffer data) {
+            signals.add(data);
+            if (requestMoreFromNext) {
+                request(1);
+            }
+        }
+
+        @Override
+        void error(Throwable failure) {
+            signals.add(failure);
+        }
+
+        @Override
+        void complete() {
+            signals.add("complete");
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package net.virtualinfinity.telnet;
+
+import net.virtualinfinity.nio.SocketChannelInterface;
+import org.hamcrest.Description;
+import org.jmock.Expectations;
+import org.jmock.api.Action;
+import org.jmock.api.Invocation;
+import org.jmock.auto.Mock;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class FlowControlledChannelTest {
+    @Rule
+    public JUnitRuleMockery context = new JUnitRuleMockery();
+
+    @Mock
+    private SocketChannelInterface socketChannel;
+
+    @Mock
+    private SessionListener sessionListener;
+
+    private final List<ByteBuffer> sent = new ArrayList<>();
+    private Selector selector;
+    private Pipe pipe;
+    private SelectionKey key;
+    private WatermarkedOutput output;
+    private FlowControlledChannel channel;
+
+    @Before
+    public void setUp() throws IOException {
+        selector = Selector.open();
+        pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        key = pipe.source().register(selector, SelectionKey.OP_READ);
+        output = new WatermarkedOutput(sent::add, 0, 4, sessionListener);
+        channel = new FlowControlledChannel(socketChannel, output);
+        context.checking(new Expectations() {{
+            allowing(socketChannel).register(selector, SelectionKey.OP_READ, null);
+            will(returnValue(key));
+        }});
+        channel.register(selector, SelectionKey.OP_READ, null);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        pipe.source().close();
+        pipe.sink().close();
+        selector.close();
+    }
+
+    @Test
+    public void writeWhichDrainsTheOutputMakesTheSessionWritable() throws IOException {
+        context.checking(new Expectations() {{
+            oneOf(sessionListener).writabilityChanged(false);
+        }});
+        output.accept(ByteBuffer.allocate(10));
+        context.assertIsSatisfied();
+
+        context.checking(new Expectations() {{
+            oneOf(socketChannel).write(sent.get(0));
+            will(sendAll());
+            oneOf(sessionListener).writabilityChanged(true);
+        }});
+        assertEquals(10, channel.write(sent.get(0)));
+    }
+
+    @Test
+    public void partialWriteLeavesTheSessionUnwritable() throws IOException {
+        context.checking(new Expectations() {{
+            oneOf(sessionListener).writabilityChanged(false);
+            oneOf(socketChannel).write(with(any(ByteBuffer.class)));
+            will(sendSome(5));
+        }});
+        output.accept(ByteBuffer.allocate(10));
+        assertEquals(5, channel.write(sent.get(0)));
+    }
+
+    @Test
+    public void suspendsReadingWhileUnwritable() throws IOException {
+        context.checking(new Expectations() {{
+            oneOf(sessionListener).writabilityChanged(false);
+            never(socketChannel).read(with(any(ByteBuffer.class)));
+        }});
+        output.accept(ByteBuffer.allocate(10));
+        assertEquals(0, channel.read(ByteBuffer.allocate(10)));
+        assertFalse(isReadInterested());
+        context.assertIsSatisfied();
+
+        context.checking(new Expectations() {{
+            oneOf(socketChannel).write(with(any(ByteBuffer.class)));
+            will(sendAll());
+            oneOf(sessionListener).writabilityChanged(true);
+        }});
+        channel.write(sent.get(0));
+        assertTrue(isReadInterested());
+    }
+
+    @Test
+    public void suspendsReadingUntilResumed() throws IOException {
+        context.checking(new Expectations() {{
+            never(socketChannel).read(with(any(ByteBuffer.class)));
+        }});
+        channel.suspendReading();
+        assertFalse(isReadInterested());
+        assertEquals(0, channel.read(ByteBuffer.allocate(10)));
+        context.assertIsSatisfied();
+
+        final ByteBuffer buffer = ByteBuffer.allocate(10);
+        context.checking(new Expectations() {{
+            oneOf(socketChannel).read(buffer);
+            will(returnValue(3));
+        }});
+        channel.resumeReading();
+        assertTrue(isReadInterested());
+        assertEquals(3, channel.read(buffer));
+    }
+
+    @Test
+    public void doesNotRestoreReadInterestItDidNotRemove() throws IOException {
+        key.interestOps(0);
+        channel.suspendReading();
+        channel.resumeReading();
+        assertFalse(isReadInterested());
+    }
+
+    private boolean isReadInterested() {
+        return (key.interestOps() & SelectionKey.OP_READ) != 0;
+    }
+
+    private static Action sendAll() {
+        return sendSome(Integer.MAX_VALUE);
+    }
+
+    private static Action sendSome(int count) {
+        return new Action() {
+            @Override
+            public Object invoke(Invocation invocation) {
+                final ByteBuffer buffer = (ByteBuffer) invocation.getParameter(0);
+                final int written = Math.min(count, buffer.remaining());
+                buffer.position(buffer.position() + written);
+                return written;
+            }
+
+            @Override
+            public void describeTo(Description description) {
+                description.appendText("sends up to ").appendValue(count).appendText(" bytes");
+            }
+        };
+    }
+}
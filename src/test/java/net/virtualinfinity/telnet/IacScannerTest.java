@@ -0,0 +1,92 @@
+package net.virtualinfinity.telnet;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+@RunWith(Parameterized.class)
+public class IacScannerTest {
+    public static final int MAX_LENGTH = 150;
+
+    private final IacScanner scanner;
+
+    public IacScannerTest(String name, IacScanner scanner) {
+        this.scanner = scanner;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> scanners() {
+        return Arrays.asList(new Object[][] {
+            {"word at a time", IacScanner.wordAtATime()},
+            {"preferred", IacScanner.preferred()},
+        });
+    }
+
+    @Test
+    public void noIACInHeapBuffer() {
+        for (int length = 0; length < MAX_LENGTH; ++length) {
+            assertEquals(-1, scanner.indexOfIAC(filled(ByteBuffer.allocate(length)), 0, length));
+        }
+    }
+
+    @Test
+    public void findsEveryPositionInHeapBuffer() {
+        findsEveryPosition(ByteBuffer.allocate(MAX_LENGTH));
+    }
+
+    @Test
+    public void findsEveryPositionInDirectBuffer() {
+        findsEveryPosition(ByteBuffer.allocateDirect(MAX_LENGTH));
+    }
+
+    @Test
+    public void findsEveryPositionInLittleEndianBuffer() {
+        findsEveryPosition(ByteBuffer.allocateDirect(MAX_LENGTH).order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    @Test
+    public void findsFirstOfSeveral() {
+        final ByteBuffer buffer = filled(ByteBuffer.allocate(MAX_LENGTH));
+        buffer.put(13, TelnetConstants.IAC).put(14, TelnetConstants.IAC).put(30, TelnetConstants.IAC);
+        assertEquals(13, scanner.indexOfIAC(buffer, 0, MAX_LENGTH));
+        assertEquals(14, scanner.indexOfIAC(buffer, 14, MAX_LENGTH));
+        assertEquals(30, scanner.indexOfIAC(buffer, 15, MAX_LENGTH));
+        assertEquals(-1, scanner.indexOfIAC(buffer, 15, 30));
+    }
+
+    @Test
+    public void ignoresBytesWhichAreAlmostIAC() {
+        final ByteBuffer buffer = ByteBuffer.allocate(16);
+        for (int i = 0; i < buffer.limit(); ++i) {
+            buffer.put(i, (byte) (i % 2 == 0 ? 0x7F : 0xFE));
+        }
+        assertEquals(-1, scanner.indexOfIAC(buffer, 0, buffer.limit()));
+    }
+
+    private void findsEveryPosition(ByteBuffer buffer) {
+        for (int from = 0; from < Long.BYTES; ++from) {
+            for (int iac = from; iac < MAX_LENGTH; ++iac) {
+                filled(buffer).put(iac, TelnetConstants.IAC);
+                assertEquals("IAC at " + iac + " searching from " + from, iac, scanner.indexOfIAC(buffer, from, MAX_LENGTH));
+                assertEquals(-1, scanner.indexOfIAC(buffer, from, iac));
+            }
+        }
+    }
+
+    private static ByteBuffer filled(ByteBuffer buffer) {
+        for (int i = 0; i < buffer.limit(); ++i) {
+            buffer.put(i, (byte) (i * 7 % 255));
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,197 @@
+package net.virtualinfinity.telnet;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Verifies that every IacScanner backend, and the event tape, cause the decoder to emit exactly the same events.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class InputChannelDecoderDifferentialTest {
+    private static final byte[] COMMANDS = {
+        TelnetConstants.IAC, TelnetConstants.NOP, TelnetConstants.SE, TelnetConstants.BRK, TelnetConstants.IP,
+        TelnetConstants.AO, TelnetConstants.AYT, TelnetConstants.EC, TelnetConstants.EL, TelnetConstants.GA,
+        TelnetConstants.DATA_MARK, TelnetConstants.EOR, TelnetConstants.ABORT, TelnetConstants.SUSP, TelnetConstants.EOF,
+    };
+    private static final byte[] OPTION_COMMANDS = {
+        TelnetConstants.DO, TelnetConstants.DONT, TelnetConstants.WILL, TelnetConstants.WONT, TelnetConstants.SB,
+    };
+
+    /**
+     * The simplest possible scanner, used as the reference.
+     */
+    private static final IacScanner BYTE_AT_A_TIME = new IacScanner() {
+        @Override
+        int indexOfIAC(ByteBuffer buffer, int from, int to) {
+            for (int index = from; index < to; ++index) {
+                if (buffer.get(index) == TelnetConstants.IAC) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+    };
+
+    @Test
+    public void sparseCommandsInHeapBuffers() throws IOException {
+        compareBackends(1, 0.001, false);
+    }
+
+    @Test
+    public void sparseCommandsInDirectBuffers() throws IOException {
+        compareBackends(2, 0.001, true);
+    }
+
+    @Test
+    public void denseCommandsInHeapBuffers() throws IOException {
+        compareBackends(3, 0.2, false);
+    }
+
+    @Test
+    public void denseCommandsInDirectBuffers() throws IOException {
+        compareBackends(4, 0.2, true);
+    }
+
+    @Test
+    public void eventTapeMatchesDirectDispatch() throws IOException {
+        final Random random = new Random(5);
+        final byte[] stream = stream(random, 1 << 16, 0.2);
+        final int[] chunkSizes = chunkSizes(random, stream.length);
+        final RecordingReceiver receiver = new RecordingReceiver();
+        final InputChannelDecoder decoder = new InputChannelDecoder(receiver);
+        final EventTape tape = new EventTape(4);
+        int offset = 0;
+        for (final int chunkSize : chunkSizes) {
+            final ByteBuffer chunk = ByteBuffer.wrap(Arrays.copyOfRange(stream, offset, offset + chunkSize));
+            tape.clear();
+            decoder.decode(chunk, tape);
+            tape.replay(chunk, receiver);
+            offset += chunkSize;
+        }
+        assertEquals(decode(IacScanner.preferred(), stream, chunkSizes, false), receiver.events);
+    }
+
+    @Test
+    public void scatteredBuffersMatchSeparateReads() throws IOException {
+        final Random random = new Random(6);
+        final byte[] stream = stream(random, 1 << 16, 0.2);
+        final int[] chunkSizes = chunkSizes(random, stream.length);
+        final ByteBuffer[] chunks = new ByteBuffer[chunkSizes.length];
+        int offset = 0;
+        for (int i = 0; i < chunks.length; ++i) {
+            chunks[i] = ByteBuffer.wrap(Arrays.copyOfRange(stream, offset, offset + chunkSizes[i]));
+            offset += chunkSizes[i];
+        }
+        final RecordingReceiver receiver = new RecordingReceiver();
+        final EventTape tape = new EventTape();
+        new InputChannelDecoder(receiver).decode(chunks, 0, chunks.length, tape);
+        tape.replay(chunks, receiver);
+        assertEquals(decode(IacScanner.preferred(), stream, chunkSizes, false), receiver.events);
+    }
+
+    private void compareBackends(long seed, double commandDensity, boolean direct) throws IOException {
+        final Random random = new Random(seed);
+        final byte[] stream = stream(random, 1 << 16, commandDensity);
+        final int[] chunkSizes = chunkSizes(random, stream.length);
+        final List<String> expected = decode(BYTE_AT_A_TIME, stream, chunkSizes, direct);
+        assertEquals(expected, decode(IacScanner.wordAtATime(), stream, chunkSizes, direct));
+        assertEquals(expected, decode(IacScanner.preferred(), stream, chunkSizes, direct));
+    }
+
+    private static List<String> decode(IacScanner scanner, byte[] stream, int[] chunkSizes, boolean direct) throws IOException {
+        final RecordingReceiver receiver = new RecordingReceiver();
+        final InputChannelDecoder decoder = new InputChannelDecoder(receiver, scanner);
+        int offset = 0;
+        for (final int chunkSize : chunkSizes) {
+            final ByteBuffer chunk = direct ? ByteBuffer.allocateDirect(chunkSize) : ByteBuffer.allocate(chunkSize);
+            chunk.put(stream, offset, chunkSize).flip();
+            decoder.accept(chunk);
+            offset += chunkSize;
+        }
+        return receiver.events;
+    }
+
+    private static byte[] stream(Random random, int length, double commandDensity) {
+        final ByteBuffer stream = ByteBuffer.allocate(length);
+        while (stream.remaining() >= 3) {
+            if (random.nextDouble() >= commandDensity) {
+                stream.put((byte) random.nextInt(255));
+            } else if (random.nextBoolean()) {
+                stream.put(TelnetConstants.IAC).put(COMMANDS[random.nextInt(COMMANDS.length)]);
+            } else {
+                stream.put(TelnetConstants.IAC).put(OPTION_COMMANDS[random.nextInt(OPTION_COMMANDS.length)]).put((byte) random.nextInt(256));
+            }
+        }
+        stream.flip();
+        final byte[] bytes = new byte[stream.remaining()];
+        stream.get(bytes);
+        return bytes;
+    }
+
+    private static int[] chunkSizes(Random random, int length) {
+        final List<Integer> sizes = new ArrayList<>();
+        for (int remaining = length; remaining > 0; ) {
+            final int size = Math.min(remaining, 1 + random.nextInt(4096));
+            sizes.add(size);
+            remaining -= size;
+        }
+        return sizes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static class RecordingReceiver implements CommandReceiver {
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void receivedDo(int optionId) {
+            events.add("DO " + optionId);
+        }
+
+        @Override
+        public void receivedDont(int optionId) {
+            events.add("DONT " + optionId);
+        }
+
+        @Override
+        public void receivedWill(int optionId) {
+            events.add("WILL " + optionId);
+        }
+
+        @Override
+        public void receivedWont(int optionId) {
+            events.add("WONT " + optionId);
+        }
+
+        @Override
+        public void receivedStartSubNegotiation(int optionId) {
+            events.add("SB " + optionId);
+        }
+
+        @Override
+        public void receivedEndSubNegotiation() {
+            events.add("SE");
+        }
+
+        @Override
+        public void receivedData(ByteBuffer data) {
+            final StringBuilder builder = new StringBuilder("DATA");
+            while (data.hasRemaining()) {
+                builder.append(' ').append(data.get() & 0xFF);
+            }
+            events.add(builder.toString());
+        }
+
+        @Override
+        public void receivedCommand(int command) {
+            events.add("CMD " + command);
+        }
+    }
+}
@@ -68,10 +68,41 @@ public class InputChannelDecoderTest {
 
     @Test
     public void receivedIAC() {
-        context.checking(expectSimpleCommand(CommandReceiver::receivedIAC));
+        context.checking(new Expectations() {{
+            oneOf(commandReceiver).receivedData(ByteBuffer.wrap(new byte[]{EXTRA_DATA, TelnetConstants.IAC, EXTRA_DATA})); inSequence(sequence);
+        }});
         acceptData(EXTRA_DATA, TelnetConstants.IAC, TelnetConstants.IAC, EXTRA_DATA);
     }
 
+    @Test
+    public void receivedSeveralIACsAsOneRun() {
+        context.checking(new Expectations() {{
+            oneOf(commandReceiver).receivedData(ByteBuffer.wrap(new byte[]{TelnetConstants.IAC, EXTRA_DATA, TelnetConstants.IAC, TelnetConstants.IAC})); inSequence(sequence);
+            oneOf(commandReceiver).receivedCommand(TelnetConstants.GA & 0xFF); inSequence(sequence);
+        }});
+        acceptData(TelnetConstants.IAC, TelnetConstants.IAC, EXTRA_DATA, TelnetConstants.IAC, TelnetConstants.IAC, TelnetConstants.IAC, TelnetConstants.IAC, TelnetConstants.IAC, TelnetConstants.GA);
+    }
+
+    @Test
+    public void receivedIACInReadOnlyBuffer() throws IOException {
+        context.checking(new Expectations() {{
+            oneOf(commandReceiver).receivedData(ByteBuffer.wrap(new byte[]{EXTRA_DATA, TelnetConstants.IAC})); inSequence(sequence);
+            oneOf(commandReceiver).receivedData(ByteBuffer.wrap(new byte[]{EXTRA_DATA})); inSequence(sequence);
+        }});
+        new InputChannelDecoder(commandReceiver).accept(ByteBuffer.wrap(new byte[]{EXTRA_DATA, TelnetConstants.IAC, TelnetConstants.IAC, EXTRA_DATA}).asReadOnlyBuffer());
+    }
+
+    @Test
+    public void receivedIACSplitAcrossReads() throws IOException {
+        context.checking(new Expectations() {{
+            oneOf(commandReceiver).receivedData(ByteBuffer.wrap(new byte[]{EXTRA_DATA})); inSequence(sequence);
+            oneOf(commandReceiver).receivedData(ByteBuffer.wrap(new byte[]{TelnetConstants.IAC, EXTRA_DATA})); inSequence(sequence);
+        }});
+        final InputChannelDecoder decoder = new InputChannelDecoder(commandReceiver);
+        decoder.accept(ByteBuffer.wrap(new byte[]{EXTRA_DATA, TelnetConstants.IAC}));
+        decoder.accept(ByteBuffer.wrap(new byte[]{TelnetConstants.IAC, EXTRA_DATA}));
+    }
+
     @Test
     public void receivedData() {
         context.checking(new Expectations() {{
@@ -80,47 +111,75 @@ public class InputChannelDecoderTest {
         acceptData(EXTRA_DATA);
     }
 
+    @Test
+    public void receivedCommandSplitAcrossBuffers() {
+        context.checking(expectOptionCommand(CommandReceiver::receivedDo));
+        new InputChannelDecoder(commandReceiver).accept(new ByteBuffer[]{
+            ByteBuffer.wrap(new byte[]{EXTRA_DATA, TelnetConstants.IAC}),
+            ByteBuffer.wrap(new byte[]{TelnetConstants.DO}),
+            ByteBuffer.wrap(new byte[]{OPTION_ID, EXTRA_DATA}),
+        });
+    }
+
     @Test
     public void receivedBreak() {
-        context.checking(expectSimpleCommand(CommandReceiver::receivedBreak));
+        context.checking(expectCommand(TelnetConstants.BRK));
         acceptData(EXTRA_DATA, TelnetConstants.IAC, TelnetConstants.BRK, EXTRA_DATA);
     }
     @Test
     public void receivedInterrupt() {
-        context.checking(expectSimpleCommand(CommandReceiver::receivedInterrupt));
+        context.checking(expectCommand(TelnetConstants.IP));
         acceptData(EXTRA_DATA, TelnetConstants.IAC, TelnetConstants.IP, EXTRA_DATA);
     }
 
     @Test
     public void receivedAbortOutput() {
-        context.checking(expectSimpleCommand(CommandReceiver::receivedAbortOutput));
+        context.checking(expectCommand(TelnetConstants.AO));
         acceptData(EXTRA_DATA, TelnetConstants.IAC, TelnetConstants.AO, EXTRA_DATA);
     }
 
     @Test
     public void receivedAreYouThere() {
-        context.checking(expectSimpleCommand(CommandReceiver::receivedAreYouThere));
+        context.checking(expectCommand(TelnetConstants.AYT));
         acceptData(EXTRA_DATA, TelnetConstants.IAC, TelnetConstants.AYT, EXTRA_DATA);
     }
 
     @Test
     public void receivedEraseCharacter() {
-        context.checking(expectSimpleCommand(CommandReceiver::receivedEraseCharacter));
+        context.checking(expectCommand(TelnetConstants.EC));
         acceptData(EXTRA_DATA, TelnetConstants.IAC, TelnetConstants.EC, EXTRA_DATA);
     }
 
     @Test
     public void receivedEraseLine() {
-        context.checking(expectSimpleCommand(CommandReceiver::receivedEraseLine));
+        context.checking(expectCommand(TelnetConstants.EL));
         acceptData(EXTRA_DATA, TelnetConstants.IAC, TelnetConstants.EL, EXTRA_DATA);
     }
 
     @Test
     public void receivedGoAhead() {
-        context.checking(expectSimpleCommand(CommandReceiver::receivedGoAhead));
+        context.checking(expectCommand(TelnetConstants.GA));
         acceptData(EXTRA_DATA, TelnetConstants.IAC, TelnetConstants.GA, EXTRA_DATA);
     }
 
+    @Test
+    public void receivedNoOperation() {
+        context.checking(expectCommand(TelnetConstants.NOP));
+        acceptData(EXTRA_DATA, TelnetConstants.IAC, TelnetConstants.NOP, EXTRA_DATA);
+    }
+
+    @Test
+    public void receivedEndOfRecord() {
+        context.checking(expectCommand(TelnetConstants.EOR));
+        acceptData(EXTRA_DATA, TelnetConstants.IAC, TelnetConstants.EOR, EXTRA_DATA);
+    }
+
+    @Test
+    public void receivedUnknownCommand() {
+        context.checking(expectCommand((byte) 1));
+        acceptData(EXTRA_DATA, TelnetConstants.IAC, (byte) 1, EXTRA_DATA);
+    }
+
     private void acceptData(byte...data) {
         try {
             new InputChannelDecoder(commandReceiver).accept(ByteBuffer.wrap(data));
@@ -134,6 +193,10 @@ public class InputChannelDecoderTest {
     private ExpectationBuilder expectOptionCommand(final ObjIntConsumer<CommandReceiver> optionCommand) {
         return expectSimpleCommand(commandReceiver -> optionCommand.accept(commandReceiver, OPTION_ID));
     }
+    private ExpectationBuilder expectCommand(final byte command) {
+        return expectSimpleCommand(commandReceiver -> commandReceiver.receivedCommand(command & 0xFF));
+    }
+
     private ExpectationBuilder expectSimpleCommand(final Consumer<CommandReceiver> command) {
         return new Expectations() {{
             oneOf(commandReceiver).receivedData(ByteBuffer.wrap(new byte[]{EXTRA_DATA})); inSequence(sequence);
@@ -0,0 +1,65 @@
+package net.virtualinfinity.telnet;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class NegotiationProfileTest {
+    private static final byte IAC = TelnetConstants.IAC;
+
+    private final List<ByteBuffer> written = new ArrayList<>();
+    private final NegotiationProfile profile = NegotiationProfile.builder()
+        .requestLocalEnable(Option.ECHO)
+        .requestRemoteEnable(Option.NEGOTIATE_ABOUT_WINDOW_SIZE)
+        .requestRemoteEnable(Option.NEGOTIATE_ABOUT_WINDOW_SIZE)
+        .allowRemote(Option.TERMINAL_TYPE)
+        .build();
+
+    @Test
+    public void sendsInitialRequestsInOneWrite() {
+        final OptionCommandManagerImpl optionManager = new OptionCommandManagerImpl(written::add);
+        optionManager.apply(profile);
+        assertEquals(1, written.size());
+        assertEquals(ByteBuffer.wrap(new byte[]{
+            IAC, TelnetConstants.WILL, (byte) Option.ECHO.optionCode(),
+            IAC, TelnetConstants.DO, (byte) Option.NEGOTIATE_ABOUT_WINDOW_SIZE.optionCode(),
+        }), written.get(0));
+        assertTrue(written.get(0).isReadOnly());
+        assertEquals(6, profile.length());
+    }
+
+    @Test
+    public void sessionsNegotiateFromProfileStates() {
+        final OptionCommandManagerImpl first = new OptionCommandManagerImpl(written::add);
+        final OptionCommandManagerImpl second = new OptionCommandManagerImpl(written::add);
+        first.apply(profile);
+        second.apply(profile);
+        written.clear();
+
+        first.receivedDo(Option.ECHO.optionCode());
+        first.receivedWill(Option.NEGOTIATE_ABOUT_WINDOW_SIZE.optionCode());
+        assertTrue(written.isEmpty());
+        assertTrue(first.options().option(Option.ECHO).isEnabledLocally());
+        assertTrue(first.options().option(Option.NEGOTIATE_ABOUT_WINDOW_SIZE).isEnabledRemotely());
+        assertFalse(second.options().option(Option.ECHO).isEnabledLocally());
+
+        second.receivedWill(Option.TERMINAL_TYPE.optionCode());
+        assertEquals(ByteBuffer.wrap(new byte[]{IAC, TelnetConstants.DO, (byte) Option.TERMINAL_TYPE.optionCode()}), written.get(0));
+        assertTrue(second.options().option(Option.TERMINAL_TYPE).isEnabledRemotely());
+    }
+
+    @Test
+    public void emptyProfileSendsNothing() {
+        new OptionCommandManagerImpl(written::add).apply(NegotiationProfile.NONE);
+        assertTrue(written.isEmpty());
+    }
+}
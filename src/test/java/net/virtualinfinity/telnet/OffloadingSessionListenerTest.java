@@ -0,0 +1,144 @@
+package net.virtualinfinity.telnet;
+
+import org.jmock.Expectations;
+import org.jmock.auto.Mock;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class OffloadingSessionListenerTest {
+    private static final int SESSIONS = 8;
+    private static final int EVENTS = 1000;
+
+    @Rule
+    public JUnitRuleMockery context = new JUnitRuleMockery();
+
+    @Mock
+    private Session session;
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void keepsEachSessionInOrder() throws Exception {
+        final CountDownLatch closed = new CountDownLatch(SESSIONS);
+        final List<RecordingListener> recorders = new ArrayList<>();
+        final List<SessionListener> listeners = new ArrayList<>();
+        for (int session = 0; session < SESSIONS; ++session) {
+            final RecordingListener recorder = new RecordingListener(closed);
+            recorders.add(recorder);
+            listeners.add(new OffloadingSessionListener(recorder, pool));
+        }
+        // Like the decoder, the same buffer is reused for every call.
+        final ByteBuffer buffer = ByteBuffer.allocate(4);
+        for (int event = 0; event < EVENTS; ++event) {
+            for (final SessionListener listener : listeners) {
+                buffer.clear();
+                buffer.putInt(event).flip();
+                listener.incomingData(buffer);
+                assertEquals(0, buffer.remaining());
+            }
+        }
+        listeners.forEach(SessionListener::connectionClosed);
+        assertTrue(closed.await(10, TimeUnit.SECONDS));
+        for (final RecordingListener recorder : recorders) {
+            assertEquals(EVENTS, recorder.received.size());
+            for (int event = 0; event < EVENTS; ++event) {
+                assertEquals(event, recorder.received.get(event).getInt(0));
+            }
+            assertEquals(0, recorder.overlaps);
+        }
+    }
+
+    @Test
+    public void failingCallbackDoesNotStopLaterEvents() throws Exception {
+        final CountDownLatch closed = new CountDownLatch(1);
+        final SessionListener listener = new OffloadingSessionListener(new RecordingListener(closed) {
+            @Override
+            public void doBreak() {
+                throw new IllegalStateException();
+            }
+        }, pool);
+        listener.doBreak();
+        listener.connectionClosed();
+        assertTrue(closed.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void disconnectsWhenTheDelegateFallsBehind() throws Exception {
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<IOException> failures = new ArrayList<>();
+        final RecordingListener recorder = new RecordingListener(new CountDownLatch(1)) {
+            @Override
+            public void connectionFailed(IOException e) {
+                failures.add(e);
+            }
+        };
+        final SessionListener listener = new OffloadingSessionListener(recorder, tasks::add, 8);
+        context.checking(new Expectations() {{
+            oneOf(session).close();
+        }});
+        listener.connected(session);
+        listener.incomingData(ByteBuffer.allocate(5));
+        final ByteBuffer tooMuch = ByteBuffer.allocate(5);
+        listener.incomingData(tooMuch);
+        assertEquals(0, tooMuch.remaining());
+        listener.incomingData(ByteBuffer.allocate(1));
+        listener.connectionClosed();
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+        assertEquals(1, recorder.received.size());
+        assertEquals(1, failures.size());
+        assertEquals(1, recorder.closed.getCount());
+    }
+
+    private static class RecordingListener implements SessionListener {
+        private final List<ByteBuffer> received = new ArrayList<>();
+        private final AtomicInteger running = new AtomicInteger();
+        private final CountDownLatch closed;
+        private int overlaps;
+
+        RecordingListener(CountDownLatch closed) {
+            this.closed = closed;
+        }
+
+        @Override
+        public void incomingData(ByteBuffer data) {
+            if (running.incrementAndGet() != 1) {
+                ++overlaps;
+            }
+            received.add(data);
+            running.decrementAndGet();
+        }
+
+        @Override
+        public void connected(Session session) {
+        }
+
+        @Override
+        public void connectionClosed() {
+            closed.countDown();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package net.virtualinfinity.telnet;
+
+import net.virtualinfinity.telnet.option.SubNegotiationListener;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Verifies that dispatching received option commands which don't need a reply allocates nothing, and that the option
+ * state of a session is bounded no matter how many options are negotiated.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class OptionCommandManagerAllocationTest {
+    private static final int ITERATIONS = 10000;
+    /**
+     * Any allocation per iteration would be far more than this, which allows for the cost of measuring.
+     */
+    private static final long TOLERANCE = 1024;
+    private static final int SESSIONS = 1000;
+    /**
+     * The most a session's option manager may allocate, with every option having been negotiated.  That is mostly
+     * its three 256 element reference arrays and its packed states.  Keeping an object per option would need more than
+     * 14KB per session.
+     */
+    private static final long SESSION_FOOTPRINT = 4096;
+
+    private final Logger logger = Logger.getLogger(OptionCommandManagerImpl.class);
+    private Level level;
+
+    @Before
+    public void setUp() {
+        level = logger.getLevel();
+        logger.setLevel(Level.INFO);
+    }
+
+    @After
+    public void tearDown() {
+        logger.setLevel(level);
+    }
+
+    @Test
+    public void negotiationDispatchDoesNotAllocate() {
+        final com.sun.management.ThreadMXBean threads = threads();
+        final OptionCommandManagerImpl optionManager = new OptionCommandManagerImpl(ByteBuffer::clear);
+        final Options options = optionManager.options();
+        final SubNegotiationListener listener = new SubNegotiationListener() {
+            @Override
+            public void startSubNegotiation() {
+            }
+
+            @Override
+            public void subNegotiationData(ByteBuffer data) {
+            }
+
+            @Override
+            public void endSubNegotiation() {
+            }
+        };
+        for (int optionId = 0; optionId < 256; ++optionId) {
+            options.option(optionId).requestRemoteEnable().requestLocalEnable().setSubNegotiationListener(listener);
+            optionManager.receivedWill(optionId);
+            optionManager.receivedDo(optionId);
+        }
+        assertSame(options.option(Option.ECHO), options.option(Option.ECHO.optionCode()));
+
+        final long threadId = Thread.currentThread().getId();
+        final long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; ++i) {
+            final int optionId = i & 255;
+            optionManager.receivedWill(optionId);
+            optionManager.receivedDo(optionId);
+            optionManager.getSubNegotiationListener(optionId);
+            options.option(optionId).isEnabledRemotely();
+        }
+        final long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertTrue("Allocated " + allocated + " bytes", allocated < TOLERANCE);
+    }
+
+    @Test
+    public void optionStateHasFixedFootprint() {
+        final com.sun.management.ThreadMXBean threads = threads();
+        // Keeps every manager reachable, so the JIT can't prove they don't escape and skip allocating them.
+        final OptionCommandManagerImpl[] managers = new OptionCommandManagerImpl[SESSIONS];
+        final long threadId = Thread.currentThread().getId();
+        final long before = threads.getThreadAllocatedBytes(threadId);
+        for (int session = 0; session < SESSIONS; ++session) {
+            final OptionCommandManagerImpl optionManager = new OptionCommandManagerImpl(ByteBuffer::clear);
+            for (int optionId = 0; optionId < 256; ++optionId) {
+                optionManager.receivedWont(optionId);
+                optionManager.receivedDont(optionId);
+            }
+            managers[session] = optionManager;
+        }
+        final long perSession = (threads.getThreadAllocatedBytes(threadId) - before) / SESSIONS;
+        assertTrue("Allocated " + perSession + " bytes per session", perSession < SESSION_FOOTPRINT);
+        for (final OptionCommandManagerImpl optionManager : managers) {
+            assertFalse(optionManager.options().option(Option.ECHO).isEnabledRemotely());
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        return threads;
+    }
+}
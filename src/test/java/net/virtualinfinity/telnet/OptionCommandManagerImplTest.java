@@ -1,8 +1,11 @@
 package net.virtualinfinity.telnet;
 
+import net.virtualinfinity.telnet.option.NegotiateAboutWindowSize;
+import net.virtualinfinity.telnet.option.OptionStateListener;
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 import org.jmock.Expectations;
+import org.jmock.Sequence;
 import org.jmock.auto.Mock;
 import org.jmock.integration.junit4.JUnitRuleMockery;
 import org.jmock.internal.ExpectationBuilder;
@@ -10,8 +13,12 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.function.IntConsumer;
 import java.util.function.Predicate;
@@ -24,12 +31,14 @@ import static org.junit.Assert.assertThat;
  */
 public class OptionCommandManagerImplTest {
     public static final byte OPTION_ID = 1;
+    private static final byte NAWS = (byte) Option.NEGOTIATE_ABOUT_WINDOW_SIZE.optionCode();
     @Rule
     public JUnitRuleMockery context = new JUnitRuleMockery();
 
     @Mock
     private Consumer<ByteBuffer> output;
     private OptionCommandManagerImpl optionManager;
+    private long now;
 
     @Before
     public void setUp() throws Exception {
@@ -86,6 +95,180 @@ public class OptionCommandManagerImplTest {
 
     }
 
+    @Test
+    public void ignoresRepeatedWill() throws Exception {
+        context.checking(sentOptionCommand(TelnetConstants.DO));
+        option().allowRemote();
+        optionManager.receivedWill(OPTION_ID);
+        optionManager.receivedWill(OPTION_ID);
+        assertThat(option().isEnabledRemotely(), equalTo(true));
+    }
+
+    @Test
+    public void disableQueuedWhileEnabling() throws Exception {
+        final Sequence sequence = context.sequence("commands");
+        context.checking(sentOptionCommand(TelnetConstants.DO, sequence));
+        context.checking(sentOptionCommand(TelnetConstants.DONT, sequence));
+        option().requestRemoteEnable().requestRemoteDisable();
+        optionManager.receivedWill(OPTION_ID);
+        assertThat(option().isEnabledRemotely(), equalTo(false));
+        optionManager.receivedWont(OPTION_ID);
+        assertThat(option().isEnabledRemotely(), equalTo(false));
+    }
+
+    @Test
+    public void enableQueuedWhileDisabling() throws Exception {
+        final Sequence sequence = context.sequence("commands");
+        context.checking(sentOptionCommand(TelnetConstants.WILL, sequence));
+        context.checking(sentOptionCommand(TelnetConstants.WONT, sequence));
+        context.checking(sentOptionCommand(TelnetConstants.WILL, sequence));
+        option().requestLocalEnable();
+        optionManager.receivedDo(OPTION_ID);
+        option().requestLocalDisable().requestLocalEnable();
+        assertThat(option().isEnabledLocally(), equalTo(false));
+        optionManager.receivedDont(OPTION_ID);
+        optionManager.receivedDo(OPTION_ID);
+        assertThat(option().isEnabledLocally(), equalTo(true));
+    }
+
+    @Test
+    public void notifiesStateListeners() throws Exception {
+        final OptionStateListener listener = context.mock(OptionStateListener.class);
+        final Sequence sequence = context.sequence("notifications");
+        context.checking(sentOptionCommand(TelnetConstants.DO, sequence));
+        context.checking(new Expectations() {{
+            oneOf(listener).enabledRemotely(); inSequence(sequence);
+        }});
+        context.checking(sentOptionCommand(TelnetConstants.DONT, sequence));
+        context.checking(new Expectations() {{
+            oneOf(listener).disabledRemotely(); inSequence(sequence);
+        }});
+        option().addStateListener(listener).allowRemote();
+        optionManager.receivedWill(OPTION_ID);
+        optionManager.receivedWont(OPTION_ID);
+    }
+
+    @Test
+    public void cutsOffNegotiationStorm() throws Exception {
+        optionManager = new OptionCommandManagerImpl(output, 4, () -> now);
+        context.checking(new Expectations() {{
+            exactly(2).of(output).accept(with(new SentCommandMatcher(TelnetConstants.DO)));
+            exactly(2).of(output).accept(with(new SentCommandMatcher(TelnetConstants.DONT)));
+        }});
+        option().allowRemote();
+        for (int i = 0; i < 100; ++i) {
+            optionManager.receivedWill(OPTION_ID);
+            optionManager.receivedWont(OPTION_ID);
+        }
+        assertThat(option().isEnabledRemotely(), equalTo(false));
+    }
+
+    @Test
+    public void resumesNegotiationAfterTheWindow() throws Exception {
+        optionManager = new OptionCommandManagerImpl(output, 2, () -> now);
+        context.checking(new Expectations() {{
+            oneOf(output).accept(with(new SentCommandMatcher(TelnetConstants.DO)));
+            oneOf(output).accept(with(new SentCommandMatcher(TelnetConstants.DONT)));
+        }});
+        option().allowRemote();
+        optionManager.receivedWill(OPTION_ID);
+        optionManager.receivedWont(OPTION_ID);
+        optionManager.receivedWill(OPTION_ID);
+        assertThat(option().isEnabledRemotely(), equalTo(false));
+        context.assertIsSatisfied();
+        context.checking(sentOptionCommand(TelnetConstants.DO));
+        now += OptionCommandManagerImpl.NEGOTIATION_WINDOW_NANOS;
+        optionManager.receivedWill(OPTION_ID);
+        assertThat(option().isEnabledRemotely(), equalTo(true));
+    }
+
+    @Test
+    public void failsPendingNegotiationsWhenCutOff() throws Exception {
+        optionManager = new OptionCommandManagerImpl(output, 1, () -> now);
+        context.checking(new Expectations() {{
+            oneOf(output).accept(with(new SentCommandMatcher(TelnetConstants.WILL)));
+            // The refusal of another option uses up the replies.
+            oneOf(output).accept(with(any(ByteBuffer.class)));
+        }});
+        final CompletableFuture<Boolean> negotiation = option().negotiateLocalEnable().toCompletableFuture();
+        final CompletableFuture<Void> settled = options().negotiationSettled().toCompletableFuture();
+        optionManager.receivedWill(2);
+        assertThat(negotiation.isDone(), equalTo(false));
+        optionManager.receivedWill(2);
+        assertThat(negotiation.isCompletedExceptionally(), equalTo(true));
+        assertThat(settled.isCompletedExceptionally(), equalTo(true));
+    }
+
+    @Test
+    public void holdsOptionCommandsWhileWriterIsOpen() throws Exception {
+        final Sequence sequence = context.sequence("output");
+        context.checking(new Expectations() {{
+            oneOf(output).accept(with(any(ByteBuffer.class))); inSequence(sequence);
+        }});
+        final SubNegotiationWriter writer = optionManager.subNegotiationOutputChannel(() -> true).open(OPTION_ID);
+        option().allowRemote();
+        optionManager.receivedWill(OPTION_ID);
+        context.assertIsSatisfied();
+        context.checking(new Expectations() {{
+            oneOf(output).accept(with(any(ByteBuffer.class))); inSequence(sequence);
+        }});
+        context.checking(sentOptionCommand(TelnetConstants.DO, sequence));
+        writer.close();
+    }
+
+    @Test
+    public void holdsOptionRepliesWhileWriterIsOpen() throws Exception {
+        final List<ByteBuffer> sent = new ArrayList<>();
+        optionManager = new OptionCommandManagerImpl(sent::add);
+        final SubNegotiationOutputChannel channel = optionManager.subNegotiationOutputChannel(() -> true);
+        final Session session = context.mock(Session.class);
+        context.checking(new Expectations() {{
+            allowing(session).options();
+            will(returnValue(optionManager.options()));
+            allowing(session).subNegotiationOutputChannel();
+            will(returnValue(channel));
+        }});
+        NegotiateAboutWindowSize.on(session).allowOffering(80, 24);
+        final SubNegotiationWriter writer = channel.open(OPTION_ID);
+        writer.write(ByteBuffer.wrap(new byte[]{'x'}));
+        optionManager.receivedDo(NAWS);
+        assertThat(bytes(sent), equalTo(new byte[]{TelnetConstants.IAC, TelnetConstants.SB, OPTION_ID, 'x'}));
+
+        writer.close();
+        assertThat(bytes(sent), equalTo(new byte[]{
+            TelnetConstants.IAC, TelnetConstants.SB, OPTION_ID, 'x', TelnetConstants.IAC, TelnetConstants.SE,
+            TelnetConstants.IAC, TelnetConstants.WILL, NAWS,
+            TelnetConstants.IAC, TelnetConstants.SB, NAWS, 0, 80, 0, 24, TelnetConstants.IAC, TelnetConstants.SE,
+        }));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsSecondWriter() throws Exception {
+        context.checking(new Expectations() {{
+            oneOf(output).accept(with(any(ByteBuffer.class)));
+        }});
+        final SubNegotiationOutputChannel channel = optionManager.subNegotiationOutputChannel(() -> true);
+        channel.open(OPTION_ID);
+        channel.open(OPTION_ID);
+    }
+
+    private static byte[] bytes(List<ByteBuffer> buffers) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (final ByteBuffer buffer : buffers) {
+            final ByteBuffer data = buffer.duplicate();
+            while (data.hasRemaining()) {
+                bytes.write(data.get());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private ExpectationBuilder sentOptionCommand(byte command, Sequence sequence) {
+        return new Expectations() {{
+            oneOf(output).accept(with(new SentCommandMatcher(command))); inSequence(sequence);
+        }};
+    }
+
     private ExpectationBuilder sentOptionCommand(byte command) {
         return new Expectations() {{
             oneOf(output).accept(with(new SentCommandMatcher(command)));
@@ -0,0 +1,108 @@
+package net.virtualinfinity.telnet;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class OptionNegotiationTest {
+    private static final int ECHO = Option.ECHO.optionCode();
+    private static final int NAWS = Option.NEGOTIATE_ABOUT_WINDOW_SIZE.optionCode();
+
+    private final List<ByteBuffer> written = new ArrayList<>();
+    private final OptionCommandManagerImpl optionManager = new OptionCommandManagerImpl(written::add);
+    private final Options options = optionManager.options();
+    private final ScheduledExecutorService loop = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        loop.shutdownNow();
+    }
+
+    @Test
+    public void completesWhenPeerAgrees() {
+        final CompletableFuture<Boolean> negotiation = options.option(NAWS).negotiateRemoteEnable().toCompletableFuture();
+        assertSame(negotiation, options.option(NAWS).negotiateRemoteEnable());
+        assertEquals(1, written.size());
+        assertFalse(negotiation.isDone());
+        optionManager.receivedWill(NAWS);
+        assertTrue(negotiation.getNow(false));
+    }
+
+    @Test
+    public void completesWhenPeerRefuses() {
+        final CompletableFuture<Boolean> negotiation = options.option(ECHO).negotiateLocalEnable().toCompletableFuture();
+        optionManager.receivedDont(ECHO);
+        assertFalse(negotiation.getNow(true));
+    }
+
+    @Test
+    public void alreadyEnabledIsComplete() {
+        options.option(ECHO).allowLocal();
+        optionManager.receivedDo(ECHO);
+        assertTrue(options.option(ECHO).negotiateLocalEnable().toCompletableFuture().getNow(false));
+    }
+
+    @Test
+    public void settlesWhenAllRequestsAreAnswered() {
+        assertTrue(options.negotiationSettled().toCompletableFuture().isDone());
+        options.option(ECHO).requestLocalEnable();
+        options.option(NAWS).requestRemoteEnable();
+        final CompletableFuture<Void> settled = options.negotiationSettled().toCompletableFuture();
+        optionManager.receivedDo(ECHO);
+        assertFalse(settled.isDone());
+        optionManager.receivedWont(NAWS);
+        assertTrue(settled.isDone());
+    }
+
+    @Test
+    public void settlesFromProfile() {
+        optionManager.apply(NegotiationProfile.builder().requestRemoteEnable(NAWS).build());
+        final CompletableFuture<Void> settled = options.negotiationSettled().toCompletableFuture();
+        assertFalse(settled.isDone());
+        optionManager.receivedWill(NAWS);
+        assertTrue(settled.isDone());
+    }
+
+    @Test
+    public void timesOut() throws Exception {
+        final CompletionStage<Boolean> negotiation = options.option(NAWS).negotiateRemoteEnable(10, TimeUnit.MILLISECONDS, loop);
+        assertTimesOut(negotiation);
+        assertTimesOut(options.negotiationSettled(10, TimeUnit.MILLISECONDS, loop));
+        assertFalse(options.option(NAWS).isEnabledRemotely());
+    }
+
+    @Test
+    public void answeredBeforeTimeout() {
+        final CompletionStage<Boolean> negotiation = options.option(NAWS).negotiateRemoteEnable(1, TimeUnit.HOURS, loop);
+        optionManager.receivedWill(NAWS);
+        assertTrue(negotiation.toCompletableFuture().getNow(false));
+    }
+
+    private static void assertTimesOut(CompletionStage<?> stage) throws Exception {
+        try {
+            stage.toCompletableFuture().get(5, TimeUnit.SECONDS);
+            fail("Expected a timeout");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package net.virtualinfinity.telnet;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class OutputChannelTest {
+    private static final byte IAC = TelnetConstants.IAC;
+
+    private final List<ByteBuffer> written = new ArrayList<>();
+    private final OutputChannel outputChannel = new OutputChannel(written::add);
+
+    @Test
+    public void writesDataWithoutIACAsOneViewOfTheInput() {
+        final byte[] data = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        outputChannel.write(data);
+        assertEquals(1, written.size());
+        assertEquals(ByteBuffer.wrap(data), written.get(0));
+        assertSame(data, written.get(0).array());
+    }
+
+    @Test
+    public void escapesIACIntoOneBuffer() {
+        outputChannel.write(new byte[]{1, IAC, 2, 3, IAC, 4, 5, 6, 7, 8, IAC});
+        assertWritten(new byte[]{1, IAC, IAC, 2, 3, IAC, IAC, 4, 5, 6, 7, 8, IAC, IAC});
+    }
+
+    @Test
+    public void escapesOnlyIACs() {
+        outputChannel.write(new byte[]{IAC, IAC, IAC, IAC, IAC, IAC, IAC, IAC, IAC});
+        assertWritten(IAC, IAC, IAC, IAC, IAC, IAC, IAC, IAC, IAC, IAC, IAC, IAC, IAC, IAC, IAC, IAC, IAC, IAC);
+    }
+
+    @Test
+    public void escapesOnlyBetweenPositionAndLimit() {
+        final ByteBuffer data = ByteBuffer.allocateDirect(6);
+        data.put(new byte[]{IAC, 1, IAC, 2, IAC, IAC}).flip();
+        data.position(1).limit(4);
+        outputChannel.write(data);
+        assertWritten(new byte[]{1, IAC, IAC, 2});
+        assertEquals(1, data.position());
+    }
+
+    @Test
+    public void writesEncodedFrameAsReadOnlyViews() {
+        final byte[] data = {1, IAC, 2};
+        final EncodedFrame frame = EncodedFrame.encode(data);
+        data[0] = 3;
+        final List<ByteBuffer> other = new ArrayList<>();
+        outputChannel.write(frame);
+        new OutputChannel(other::add).write(frame);
+        assertEquals(4, frame.length());
+        assertWritten(new byte[]{1, IAC, IAC, 2});
+        assertTrue(written.get(0).isReadOnly());
+        written.get(0).get();
+        assertEquals(ByteBuffer.wrap(new byte[]{1, IAC, IAC, 2}), other.get(0));
+    }
+
+    private void assertWritten(byte... expected) {
+        assertEquals(1, written.size());
+        assertEquals(ByteBuffer.wrap(expected), written.get(0));
+    }
+}
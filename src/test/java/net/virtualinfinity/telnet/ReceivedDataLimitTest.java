@@ -0,0 +1,56 @@
+package net.virtualinfinity.telnet;
+
+import org.jmock.Expectations;
+import org.jmock.auto.Mock;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class ReceivedDataLimitTest {
+    @Rule
+    public JUnitRuleMockery context = new JUnitRuleMockery();
+
+    @Mock
+    private Session session;
+
+    private final List<IOException> failures = new ArrayList<>();
+    private final ReceivedDataLimit limit = new ReceivedDataLimit(8);
+
+    @Test
+    public void releasedBytesMakeRoom() {
+        assertTrue(limit.reserve(ByteBuffer.allocate(8), session, failures::add));
+        limit.release(3);
+        assertEquals(5, limit.waitingBytes());
+        assertTrue(limit.reserve(ByteBuffer.allocate(3), session, failures::add));
+        assertFalse(limit.overflowed());
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    public void closesTheSessionOnceOverTheLimit() throws IOException {
+        context.checking(new Expectations() {{
+            oneOf(session).close();
+        }});
+        assertTrue(limit.reserve(ByteBuffer.allocate(5), session, failures::add));
+        final ByteBuffer tooMuch = ByteBuffer.allocate(4);
+        assertFalse(limit.reserve(tooMuch, session, failures::add));
+        assertEquals(0, tooMuch.remaining());
+        limit.release(5);
+        assertFalse(limit.reserve(ByteBuffer.allocate(1), session, failures::add));
+        assertTrue(limit.overflowed());
+        assertEquals(1, failures.size());
+        assertEquals(0, limit.waitingBytes());
+    }
+}
@@ -0,0 +1,52 @@
+package net.virtualinfinity.telnet;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class SerialExecutorTest {
+    private final List<Runnable> pool = new ArrayList<>();
+    private final List<Integer> ran = new ArrayList<>();
+
+    @Test
+    public void runsQueuedTasksInOneBatch() {
+        final SerialExecutor executor = new SerialExecutor(pool::add);
+        executor.execute(() -> ran.add(1));
+        executor.execute(() -> ran.add(2));
+        assertEquals(1, pool.size());
+        pool.remove(0).run();
+        assertEquals(2, ran.size());
+        assertEquals(Integer.valueOf(1), ran.get(0));
+        assertEquals(Integer.valueOf(2), ran.get(1));
+    }
+
+    @Test
+    public void schedulesAgainAfterThePoolRejectsTheBatch() {
+        final AtomicBoolean reject = new AtomicBoolean(true);
+        final SerialExecutor executor = new SerialExecutor(task -> {
+            if (reject.getAndSet(false)) {
+                throw new RejectedExecutionException("Shutting down");
+            }
+            pool.add(task);
+        });
+        try {
+            executor.execute(() -> ran.add(1));
+            fail("Expected a RejectedExecutionException");
+        } catch (final RejectedExecutionException expected) {
+            // The task stays queued.
+        }
+        executor.execute(() -> ran.add(2));
+        assertEquals(1, pool.size());
+        pool.remove(0).run();
+        assertEquals(2, ran.size());
+    }
+}
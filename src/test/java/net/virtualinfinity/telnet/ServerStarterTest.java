@@ -0,0 +1,198 @@
+package net.virtualinfinity.telnet;
+
+import net.virtualinfinity.nio.SocketChannelInterface;
+import org.jmock.Expectations;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class ServerStarterTest {
+    @Rule
+    public JUnitRuleMockery context = new JUnitRuleMockery();
+
+    private final List<SessionListener> started = new ArrayList<>();
+    private final List<Runnable> firstLoop = new ArrayList<>();
+    private final List<Runnable> secondLoop = new ArrayList<>();
+    private int channels;
+
+    private final SessionStarter sessionStarter = (socketChannel, sessionListener, loop) -> {
+        started.add(sessionListener);
+        return null;
+    };
+
+    @Test
+    public void roundRobin() {
+        final ServerStarter starter = starter(ServerStarter.LoopSelection.ROUND_ROBIN);
+        for (int i = 0; i < 5; ++i) {
+            starter.startSession(channel(), listener());
+        }
+        assertEquals(3, firstLoop.size());
+        assertEquals(2, secondLoop.size());
+        assertArrayEquals(new int[]{3, 2}, starter.sessionsPerLoop());
+    }
+
+    @Test
+    public void leastLoadedAfterSessionsClose() {
+        final ServerStarter starter = starter(ServerStarter.LoopSelection.LEAST_LOADED);
+        starter.startSession(channel(), listener());
+        starter.startSession(channel(), listener());
+        firstLoop.forEach(Runnable::run);
+        started.get(0).connectionClosed();
+        started.get(0).connectionFailed(new IOException());
+        assertArrayEquals(new int[]{0, 1}, starter.sessionsPerLoop());
+        starter.startSession(channel(), listener());
+        assertEquals(2, firstLoop.size());
+    }
+
+    @Test
+    public void closedChannelFailsSession() throws Exception {
+        final SocketChannelInterface channel = closedChannel();
+        final List<IOException> failures = new ArrayList<>();
+        final ServerStarter starter = new ServerStarter((socketChannel, sessionListener, loop) -> {
+            throw new ClosedChannelException();
+        }, ServerStarter.LoopSelection.ROUND_ROBIN).addLoop(null, Runnable::run);
+        starter.startSession(channel, new SessionListener() {
+            @Override
+            public void incomingData(ByteBuffer data) {
+            }
+
+            @Override
+            public void connected(Session session) {
+            }
+
+            @Override
+            public void connectionFailed(IOException e) {
+                failures.add(e);
+            }
+        });
+        assertEquals(1, failures.size());
+        assertArrayEquals(new int[]{0}, starter.sessionsPerLoop());
+    }
+
+    @Test
+    public void sessionWhichFailsToStartIsNotCounted() throws Exception {
+        final SocketChannelInterface channel = closedChannel();
+        final ServerStarter starter = new ServerStarter((socketChannel, sessionListener, loop) -> {
+            throw new IllegalArgumentException();
+        }, ServerStarter.LoopSelection.ROUND_ROBIN).addLoop(null, Runnable::run);
+        try {
+            starter.startSession(channel, listener());
+        } catch (IllegalArgumentException expected) {
+            // Thrown by the executor's task.
+        }
+        assertArrayEquals(new int[]{0}, starter.sessionsPerLoop());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void requiresLoops() {
+        new ServerStarter(sessionStarter, ServerStarter.LoopSelection.ROUND_ROBIN).startSession(channel(), listener());
+    }
+
+    @Test
+    public void acceptsConnections() throws Exception {
+        final BlockingQueue<SessionListener> sessions = new LinkedBlockingQueue<>();
+        final SocketChannelInterface channel = channel();
+        final SessionListener listener = listener();
+        final ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+        try (final ServerStarter starter = new ServerStarter((socketChannel, sessionListener, loop) -> {
+            assertSame(channel, socketChannel);
+            sessions.add(sessionListener);
+            return null;
+        }, ServerStarter.LoopSelection.ROUND_ROBIN).addLoop(null, Runnable::run)) {
+            starter.listen(serverChannel, socketChannel -> channel, () -> listener);
+            try (final SocketChannel client = SocketChannel.open(serverChannel.getLocalAddress())) {
+                assertNotNull(sessions.poll(5, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    @Test
+    public void keepsAcceptingAfterSessionFailsToStart() throws Exception {
+        final BlockingQueue<SessionListener> sessions = new LinkedBlockingQueue<>();
+        final SocketChannelInterface channel = channel();
+        final SessionListener listener = listener();
+        final ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+        final boolean[] failed = {false};
+        try (final ServerStarter starter = new ServerStarter((socketChannel, sessionListener, loop) -> {
+            sessions.add(sessionListener);
+            return null;
+        }, ServerStarter.LoopSelection.ROUND_ROBIN).addLoop(null, Runnable::run)) {
+            starter.listen(serverChannel, socketChannel -> {
+                if (!failed[0]) {
+                    failed[0] = true;
+                    throw new IllegalStateException("Unable to adapt channel");
+                }
+                return channel;
+            }, () -> listener);
+            try (final SocketChannel first = SocketChannel.open(serverChannel.getLocalAddress())) {
+                // The accepted channel is closed, so the client sees the end of the stream.
+                assertEquals(-1, first.read(ByteBuffer.allocate(1)));
+            }
+            try (final SocketChannel second = SocketChannel.open(serverChannel.getLocalAddress())) {
+                assertNotNull(sessions.poll(5, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void listensOnlyOnce() throws Exception {
+        try (final ServerSocketChannel first = ServerSocketChannel.open();
+             final ServerSocketChannel second = ServerSocketChannel.open();
+             final ServerStarter starter = starter(ServerStarter.LoopSelection.ROUND_ROBIN)) {
+            first.bind(new InetSocketAddress("127.0.0.1", 0));
+            second.bind(new InetSocketAddress("127.0.0.1", 0));
+            starter.listen(first, socketChannel -> channel(), this::listener);
+            starter.listen(second, socketChannel -> channel(), this::listener);
+        }
+    }
+
+    private ServerStarter starter(ServerStarter.LoopSelection selection) {
+        return new ServerStarter(sessionStarter, selection).addLoop(null, firstLoop::add).addLoop(null, secondLoop::add);
+    }
+
+    private SocketChannelInterface channel() {
+        return context.mock(SocketChannelInterface.class, "channel" + channels++);
+    }
+
+    private SocketChannelInterface closedChannel() throws IOException {
+        final SocketChannelInterface channel = channel();
+        context.checking(new Expectations() {{
+            oneOf(channel).close();
+        }});
+        return channel;
+    }
+
+    private SessionListener listener() {
+        return new SessionListener() {
+            @Override
+            public void incomingData(ByteBuffer data) {
+            }
+
+            @Override
+            public void connected(Session session) {
+            }
+        };
+    }
+}
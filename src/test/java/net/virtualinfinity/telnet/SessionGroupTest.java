@@ -0,0 +1,162 @@
+package net.virtualinfinity.telnet;
+
+import org.jmock.Expectations;
+import org.jmock.States;
+import org.jmock.auto.Mock;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class SessionGroupTest {
+    private static final byte[] FRAME = {1, 2, 3, 4};
+
+    @Rule
+    public JUnitRuleMockery context = new JUnitRuleMockery();
+
+    @Mock
+    private Session session;
+
+    private final States writability = context.states("writability").startsAs("writable");
+    private final List<ByteBuffer> written = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        allowWrites(session, written);
+    }
+
+    @Test
+    public void publishesToEveryMember() {
+        final Session second = context.mock(Session.class, "second");
+        final List<ByteBuffer> secondWritten = new ArrayList<>();
+        allowWrites(second, secondWritten);
+        final SessionGroup group = new SessionGroup(16, SessionGroup.SlowConsumerPolicy.DROP_NEWEST);
+        group.add(session, Runnable::run);
+        group.add(second, Runnable::run);
+        group.publish(ByteBuffer.wrap(new byte[]{1, TelnetConstants.IAC}));
+        assertEquals(ByteBuffer.wrap(new byte[]{1, TelnetConstants.IAC, TelnetConstants.IAC}), written.get(0));
+        assertEquals(ByteBuffer.wrap(new byte[]{1, TelnetConstants.IAC, TelnetConstants.IAC}), secondWritten.get(0));
+    }
+
+    @Test
+    public void removedMemberIsNotSentTo() {
+        final SessionGroup group = new SessionGroup(16, SessionGroup.SlowConsumerPolicy.DROP_NEWEST);
+        group.add(session, Runnable::run);
+        assertTrue(group.remove(session));
+        assertFalse(group.remove(session));
+        group.publish(ByteBuffer.wrap(FRAME));
+        assertEquals(0, written.size());
+        assertEquals(0, group.size());
+    }
+
+    @Test
+    public void holdsFramesWhileUnwritable() {
+        final SessionGroup group = new SessionGroup(8, SessionGroup.SlowConsumerPolicy.DROP_NEWEST);
+        group.add(session, Runnable::run);
+        writability.become("unwritable");
+        publish(group, 2);
+        assertEquals(0, written.size());
+        writability.become("writable");
+        group.resume(session);
+        assertEquals(2, written.size());
+        publish(group, 1);
+        assertEquals(3, written.size());
+        assertEquals(0, group.droppedFrames());
+    }
+
+    @Test
+    public void membershipSendsHeldFramesWhenWritable() {
+        final SessionListener listener = context.mock(SessionListener.class);
+        final SessionGroup group = new SessionGroup(8, SessionGroup.SlowConsumerPolicy.DROP_NEWEST);
+        final SessionListener membership = group.membership(listener, Runnable::run);
+        context.checking(new Expectations() {{
+            oneOf(listener).connected(session);
+            oneOf(listener).writabilityChanged(false);
+            oneOf(listener).writabilityChanged(true);
+            oneOf(listener).connectionClosed();
+        }});
+        membership.connected(session);
+        assertEquals(1, group.size());
+        writability.become("unwritable");
+        membership.writabilityChanged(false);
+        publish(group, 2);
+        assertEquals(0, written.size());
+        writability.become("writable");
+        membership.writabilityChanged(true);
+        assertEquals(2, written.size());
+        membership.connectionClosed();
+        assertEquals(0, group.size());
+    }
+
+    @Test
+    public void dropNewestDiscardsFramesOverTheLimit() {
+        final SessionGroup group = new SessionGroup(8, SessionGroup.SlowConsumerPolicy.DROP_NEWEST);
+        group.add(session, Runnable::run);
+        writability.become("unwritable");
+        publish(group, 3);
+        writability.become("writable");
+        group.resume(session);
+        assertEquals(2, written.size());
+        assertEquals(1, group.droppedFrames());
+    }
+
+    @Test
+    public void dropOldestDiscardsHeldFrames() {
+        final SessionGroup group = new SessionGroup(8, SessionGroup.SlowConsumerPolicy.DROP_OLDEST);
+        group.add(session, Runnable::run);
+        writability.become("unwritable");
+        for (byte i = 0; i < 3; ++i) {
+            group.publish(ByteBuffer.wrap(new byte[]{i, i, i, i}));
+        }
+        writability.become("writable");
+        group.resume(session);
+        assertEquals(2, written.size());
+        assertEquals(ByteBuffer.wrap(new byte[]{1, 1, 1, 1}), written.get(0));
+        assertEquals(ByteBuffer.wrap(new byte[]{2, 2, 2, 2}), written.get(1));
+        assertEquals(1, group.droppedFrames());
+    }
+
+    @Test
+    public void disconnectClosesSlowSession() throws Exception {
+        final SessionGroup group = new SessionGroup(8, SessionGroup.SlowConsumerPolicy.DISCONNECT);
+        group.add(session, Runnable::run);
+        context.checking(new Expectations() {{
+            oneOf(session).close();
+        }});
+        writability.become("unwritable");
+        publish(group, 3);
+        assertEquals(0, group.size());
+        assertEquals(0, written.size());
+    }
+
+    private void allowWrites(Session session, List<ByteBuffer> written) {
+        final OutputChannel outputChannel = new OutputChannel(written::add);
+        context.checking(new Expectations() {{
+            allowing(session).outputChannel();
+            will(returnValue(outputChannel));
+            allowing(session).isWritable();
+            when(writability.is("writable"));
+            will(returnValue(true));
+            allowing(session).isWritable();
+            when(writability.isNot("writable"));
+            will(returnValue(false));
+        }});
+    }
+
+    private static void publish(SessionGroup group, int frames) {
+        for (int i = 0; i < frames; ++i) {
+            group.publish(ByteBuffer.wrap(FRAME));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package net.virtualinfinity.telnet;
+
+import org.jmock.Expectations;
+import org.jmock.auto.Mock;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class SessionPublisherTest {
+    @Rule
+    public JUnitRuleMockery context = new JUnitRuleMockery();
+
+    @Mock
+    private Session session;
+
+    private final SessionPublisher publisher = new SessionPublisher(Runnable::run);
+
+    @Before
+    public void ignoreReading() {
+        context.checking(new Expectations() {{
+            ignoring(session).suspendReading();
+            ignoring(session).resumeReading();
+        }});
+    }
+
+    @Test
+    public void deliversRequestedData() {
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.connected(session);
+        publisher.subscribe(subscriber);
+        publisher.incomingData(ByteBuffer.wrap(new byte[]{1}));
+        publisher.incomingData(ByteBuffer.wrap(new byte[]{2}));
+        assertTrue(subscriber.signals.isEmpty());
+        subscriber.subscription.request(1);
+        assertEquals(1, subscriber.signals.size());
+        assertEquals(ByteBuffer.wrap(new byte[]{1}), subscriber.signals.get(0));
+        publisher.connectionClosed();
+        subscriber.subscription.request(1);
+        assertEquals(ByteBuffer.wrap(new byte[]{2}), subscriber.signals.get(1));
+        assertEquals("complete", subscriber.signals.get(2));
+    }
+
+    @Test
+    public void cancelClosesTheSession() throws Exception {
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        context.checking(new Expectations() {{
+            oneOf(session).close();
+        }});
+        publisher.connected(session);
+        publisher.subscribe(subscriber);
+        publisher.incomingData(ByteBuffer.wrap(new byte[]{1}));
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(1);
+        assertTrue(subscriber.signals.isEmpty());
+    }
+
+    @Test
+    public void rejectsSecondSubscriber() {
+        publisher.subscribe(new RecordingSubscriber());
+        final RecordingSubscriber second = new RecordingSubscriber();
+        publisher.subscribe(second);
+        assertTrue(second.signals.get(0) instanceof IllegalStateException);
+    }
+
+    @Test
+    public void subscribesOnTheEventLoop() {
+        final ArrayDeque<Runnable> loop = new ArrayDeque<>();
+        final SessionPublisher publisher = new SessionPublisher(loop::add);
+        final RecordingSubscriber first = new RecordingSubscriber();
+        final RecordingSubscriber second = new RecordingSubscriber();
+        publisher.subscribe(first);
+        publisher.subscribe(second);
+        assertNull(first.subscription);
+        assertTrue(second.signals.isEmpty());
+        while (!loop.isEmpty()) {
+            loop.removeFirst().run();
+        }
+        assertNotNull(first.subscription);
+        assertTrue(second.signals.get(0) instanceof IllegalStateException);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void rejectsNullSubscriber() {
+        publisher.subscribe(null);
+    }
+
+    private static class RecordingSubscriber implements Subscriber<ByteBuffer> {
+        private final List<Object> signals = new ArrayList<>();
+        private Subscription subscription;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(ByteBuffer data) {
+            signals.add(data);
+        }
+
+        @Override
+        public void onError(Throwable failure) {
+            signals.add(failure);
+        }
+
+        @Override
+        public void onComplete() {
+            signals.add("complete");
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package net.virtualinfinity.telnet;
+
+import org.jmock.Expectations;
+import org.jmock.States;
+import org.jmock.auto.Mock;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.jmock.lib.concurrent.Synchroniser;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class SessionWriteQueueTest {
+    private static final byte IAC = TelnetConstants.IAC;
+
+    @Rule
+    public JUnitRuleMockery context = new JUnitRuleMockery() {{
+        setThreadingPolicy(new Synchroniser());
+    }};
+
+    @Mock
+    private Session session;
+
+    private final List<ByteBuffer> written = new ArrayList<>();
+    private final OutputChannel outputChannel = new OutputChannel(written::add);
+    private final SubNegotiationOutputChannel subNegotiations = new OptionCommandManagerImpl(written::add).subNegotiationOutputChannel(() -> true);
+    private final List<Runnable> loop = new ArrayList<>();
+
+    @Test
+    public void drainsBatchWithOneTask() {
+        final States corking = context.states("corking").startsAs("uncorked");
+        context.checking(new Expectations() {{
+            oneOf(session).cork();
+            then(corking.is("corked"));
+            allowing(session).outputChannel();
+            when(corking.is("corked"));
+            will(returnValue(outputChannel));
+            oneOf(session).uncork();
+            when(corking.is("corked"));
+            then(corking.is("uncorked"));
+            allowing(session).subNegotiationOutputChannel();
+            will(returnValue(subNegotiations));
+        }});
+        final SessionWriteQueue queue = new SessionWriteQueue(session, loop::add);
+        final ByteBuffer data = ByteBuffer.wrap(new byte[]{1, IAC});
+        queue.write(data);
+        data.put(0, (byte) 9);
+        queue.write(EncodedFrame.encode(new byte[]{2}));
+        queue.sendSubNegotiation(24, ByteBuffer.wrap(new byte[]{0, IAC}));
+        assertEquals(1, loop.size());
+        assertEquals(12, queue.queuedBytes());
+        assertTrue(written.isEmpty());
+
+        loop.remove(0).run();
+        assertEquals(0, queue.queuedBytes());
+        assertEquals(ByteBuffer.wrap(new byte[]{1, IAC, IAC}), written.get(0));
+        assertEquals(ByteBuffer.wrap(new byte[]{2}), written.get(1));
+        assertEquals(ByteBuffer.wrap(new byte[]{IAC, TelnetConstants.SB, 24, 0, IAC, IAC, IAC, TelnetConstants.SE}), written.get(2));
+
+        queue.write(new byte[]{3});
+        assertEquals(1, loop.size());
+    }
+
+    @Test
+    public void waitsForOpenSubNegotiationWriter() throws Exception {
+        allowSession();
+        final SubNegotiationWriter writer = subNegotiations.open(24);
+        final SessionWriteQueue queue = new SessionWriteQueue(session, loop::add);
+        queue.write(new byte[]{1});
+        loop.remove(0).run();
+        queue.write(new byte[]{2});
+        assertTrue(loop.isEmpty());
+        assertEquals(1, written.size());
+
+        writer.close();
+        assertEquals(ByteBuffer.wrap(new byte[]{IAC, TelnetConstants.SE}), written.get(1));
+        assertEquals(ByteBuffer.wrap(new byte[]{1}), written.get(2));
+        assertEquals(ByteBuffer.wrap(new byte[]{2}), written.get(3));
+        assertEquals(0, queue.queuedBytes());
+    }
+
+    @Test
+    public void schedulesAgainAfterLoopRejectsTheDrain() {
+        allowSession();
+        final AtomicBoolean reject = new AtomicBoolean(true);
+        final SessionWriteQueue queue = new SessionWriteQueue(session, task -> {
+            if (reject.getAndSet(false)) {
+                throw new RejectedExecutionException("Shutting down");
+            }
+            loop.add(task);
+        });
+        try {
+            queue.write(new byte[]{1});
+            fail("Expected a RejectedExecutionException");
+        } catch (final RejectedExecutionException expected) {
+            // The data stays queued.
+        }
+        queue.write(new byte[]{2});
+        assertEquals(1, loop.size());
+        loop.remove(0).run();
+        assertEquals(ByteBuffer.wrap(new byte[]{1}), written.get(0));
+        assertEquals(ByteBuffer.wrap(new byte[]{2}), written.get(1));
+    }
+
+    @Test
+    public void keepsOrderOfEachProducer() throws Exception {
+        final int producers = 4;
+        final int writes = 2000;
+        context.checking(new Expectations() {{
+            allowing(session).cork();
+            allowing(session).uncork();
+            allowing(session).outputChannel();
+            will(returnValue(outputChannel));
+            allowing(session).subNegotiationOutputChannel();
+            will(returnValue(subNegotiations));
+        }});
+        final ExecutorService loopThread = Executors.newSingleThreadExecutor();
+        final SessionWriteQueue queue = new SessionWriteQueue(session, loopThread);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        for (int producer = 0; producer < producers; ++producer) {
+            final byte id = (byte) producer;
+            final Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (final InterruptedException e) {
+                    return;
+                }
+                for (int sequence = 0; sequence < writes; ++sequence) {
+                    queue.write(new byte[]{id, (byte) (sequence / 100), (byte) (sequence % 100)});
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        loopThread.shutdown();
+        assertTrue(loopThread.awaitTermination(10, TimeUnit.SECONDS));
+
+        final int[] next = new int[producers];
+        int count = 0;
+        for (final ByteBuffer buffer : written) {
+            while (buffer.hasRemaining()) {
+                final byte id = buffer.get();
+                final int sequence = buffer.get() * 100 + buffer.get();
+                assertEquals(next[id]++, sequence);
+                ++count;
+            }
+        }
+        assertEquals(producers * writes, count);
+        assertEquals(0, queue.queuedBytes());
+    }
+
+    private void allowSession() {
+        context.checking(new Expectations() {{
+            allowing(session).cork();
+            allowing(session).uncork();
+            allowing(session).outputChannel();
+            will(returnValue(outputChannel));
+            allowing(session).subNegotiationOutputChannel();
+            will(returnValue(subNegotiations));
+        }});
+    }
+}
@@ -0,0 +1,66 @@
+package net.virtualinfinity.telnet;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class SubNegotiationFrameBuilderTest {
+    private static final byte IAC = TelnetConstants.IAC;
+    private static final byte SB = TelnetConstants.SB;
+    private static final byte SE = TelnetConstants.SE;
+    private static final int OPTION_ID = 31;
+
+    private final List<ByteBuffer> written = new ArrayList<>();
+    private final SubNegotiationFrameBuilder builder = new SubNegotiationFrameBuilder(written::add);
+
+    @Test
+    public void buildsEscapedFrame() {
+        builder.start(OPTION_ID).putShort(0x01FF).put(IAC).put(new byte[]{2, IAC, 3}).send();
+        assertEquals(1, written.size());
+        assertEquals(ByteBuffer.wrap(new byte[]{IAC, SB, OPTION_ID, 1, IAC, IAC, IAC, IAC, 2, IAC, IAC, 3, IAC, SE}), written.get(0));
+    }
+
+    @Test
+    public void framesDoNotOverwriteEachOther() {
+        builder.start(OPTION_ID).put((byte) 1).send();
+        builder.start(OPTION_ID).put((byte) 2).send();
+        assertEquals(ByteBuffer.wrap(new byte[]{IAC, SB, OPTION_ID, 1, IAC, SE}), written.get(0));
+        assertEquals(ByteBuffer.wrap(new byte[]{IAC, SB, OPTION_ID, 2, IAC, SE}), written.get(1));
+    }
+
+    @Test
+    public void unsentFrameIsDiscarded() {
+        builder.start(OPTION_ID).put((byte) 1);
+        builder.start(OPTION_ID).put((byte) 2).send();
+        assertEquals(1, written.size());
+        assertEquals(ByteBuffer.wrap(new byte[]{IAC, SB, OPTION_ID, 2, IAC, SE}), written.get(0));
+    }
+
+    @Test
+    public void framesLargerThanTheSlab() {
+        final byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = (byte) i;
+        }
+        builder.start(OPTION_ID).put((byte) 1).send();
+        builder.start(OPTION_ID).put((byte) 0).put(data).send();
+        final ByteBuffer expected = ByteBuffer.allocate(data.length + data.length / 256 + 6);
+        expected.put(IAC).put(SB).put((byte) OPTION_ID).put((byte) 0);
+        for (final byte b : data) {
+            expected.put(b);
+            if (b == IAC) {
+                expected.put(IAC);
+            }
+        }
+        expected.put(IAC).put(SE).flip();
+        assertEquals(ByteBuffer.wrap(new byte[]{IAC, SB, OPTION_ID, 1, IAC, SE}), written.get(0));
+        assertEquals(expected, written.get(1));
+    }
+}
@@ -0,0 +1,63 @@
+package net.virtualinfinity.telnet;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class SubNegotiationWriterTest {
+    private static final byte IAC = TelnetConstants.IAC;
+    private static final int OPTION_ID = 201;
+
+    private final List<ByteBuffer> written = new ArrayList<>();
+
+    @Test
+    public void sendsEachChunkEscaped() throws IOException {
+        final SubNegotiationWriter writer = new SubNegotiationWriter(written::add, () -> true, OPTION_ID, () -> { });
+        final ByteBuffer chunk = ByteBuffer.wrap(new byte[]{1, IAC, 2});
+        assertEquals(3, writer.write(chunk));
+        assertFalse(chunk.hasRemaining());
+        chunk.put(0, (byte) 5);
+        writer.write(ByteBuffer.wrap(new byte[]{3}));
+        writer.close();
+        writer.close();
+        assertFalse(writer.isOpen());
+        assertEquals(ByteBuffer.wrap(new byte[]{IAC, TelnetConstants.SB, (byte) OPTION_ID}), written.get(0));
+        assertEquals(ByteBuffer.wrap(new byte[]{1, IAC, IAC, 2}), written.get(1));
+        assertEquals(ByteBuffer.wrap(new byte[]{3}), written.get(2));
+        assertEquals(ByteBuffer.wrap(new byte[]{IAC, TelnetConstants.SE}), written.get(3));
+        assertEquals(4, written.size());
+    }
+
+    @Test
+    public void worksAsAnOutputStream() throws IOException {
+        try (final OutputStream stream = Channels.newOutputStream(new SubNegotiationWriter(written::add, () -> true, OPTION_ID, () -> { }))) {
+            stream.write(new byte[]{'{', '}'});
+        }
+        assertEquals(3, written.size());
+        assertEquals(ByteBuffer.wrap(new byte[]{'{', '}'}), written.get(1));
+    }
+
+    @Test
+    public void reportsWritability() {
+        assertFalse(new SubNegotiationWriter(written::add, () -> false, OPTION_ID, () -> { }).isWritable());
+    }
+
+    @Test(expected = ClosedChannelException.class)
+    public void writeAfterClose() throws IOException {
+        final SubNegotiationWriter writer = new SubNegotiationWriter(written::add, () -> true, OPTION_ID, () -> { });
+        writer.close();
+        writer.write(ByteBuffer.wrap(new byte[]{1}));
+    }
+}
@@ -0,0 +1,74 @@
+package net.virtualinfinity.telnet;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class TelnetDecoderTest {
+    private static final int ECHO = 1;
+
+    @Test
+    public void recordsDataAndCommands() {
+        final ByteBuffer input = ByteBuffer.wrap(new byte[] {
+            'h', 'i', TelnetConstants.IAC, TelnetConstants.WILL, ECHO, 'a', TelnetConstants.IAC, TelnetConstants.IAC, 'b',
+            TelnetConstants.IAC, TelnetConstants.GA,
+        });
+        final EventTape tape = new EventTape();
+        new TelnetDecoder().decode(input, tape);
+
+        assertEquals(4, tape.size());
+        assertData(tape, 0, input, "hi");
+        assertEquals(EventTape.WILL, tape.kind(1));
+        assertEquals(ECHO, tape.argument(1));
+        assertData(tape, 2, input, "a\u00FFb");
+        assertEquals(EventTape.COMMAND, tape.kind(3));
+        assertEquals(TelnetConstants.GA & 0xFF, tape.argument(3));
+    }
+
+    @Test
+    public void keepsStateBetweenReads() {
+        final TelnetDecoder decoder = new TelnetDecoder();
+        final EventTape tape = new EventTape();
+        decoder.decode(ByteBuffer.wrap(new byte[] {TelnetConstants.IAC, TelnetConstants.SB}), tape);
+        assertEquals(0, tape.size());
+
+        decoder.decode(ByteBuffer.wrap(new byte[] {ECHO, 'x', TelnetConstants.IAC, TelnetConstants.SE}), tape);
+        assertEquals(3, tape.size());
+        assertEquals(EventTape.START_SUB_NEGOTIATION, tape.kind(0));
+        assertEquals(ECHO, tape.argument(0));
+        assertEquals(EventTape.DATA, tape.kind(1));
+        assertEquals(EventTape.END_SUB_NEGOTIATION, tape.kind(2));
+    }
+
+    @Test
+    public void recordsWhichBufferOfAScatteringReadHoldsTheData() {
+        final ByteBuffer[] inputs = {
+            ByteBuffer.wrap(new byte[] {'a', TelnetConstants.IAC}),
+            ByteBuffer.wrap(new byte[] {TelnetConstants.DO, ECHO, 'b', 'c'}),
+        };
+        final EventTape tape = new EventTape();
+        new TelnetDecoder().decode(inputs, 0, inputs.length, tape);
+
+        assertEquals(3, tape.size());
+        assertEquals(0, tape.argument(0));
+        assertData(tape, 0, inputs[0], "a");
+        assertEquals(EventTape.DO, tape.kind(1));
+        assertEquals(ECHO, tape.argument(1));
+        assertEquals(1, tape.argument(2));
+        assertData(tape, 2, inputs[1], "bc");
+    }
+
+    private static void assertData(EventTape tape, int event, ByteBuffer input, String expected) {
+        assertEquals(EventTape.DATA, tape.kind(event));
+        final StringBuilder data = new StringBuilder();
+        for (int index = tape.offset(event); index < tape.offset(event) + tape.length(event); ++index) {
+            data.append((char) (input.get(index) & 0xFF));
+        }
+        assertEquals(expected, data.toString());
+    }
+}
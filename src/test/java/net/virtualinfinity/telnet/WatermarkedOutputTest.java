@@ -0,0 +1,100 @@
+package net.virtualinfinity.telnet;
+
+import org.jmock.Expectations;
+import org.jmock.Sequence;
+import org.jmock.auto.Mock;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class WatermarkedOutputTest {
+    @Rule
+    public JUnitRuleMockery context = new JUnitRuleMockery();
+
+    @Mock
+    private SessionListener sessionListener;
+
+    private final List<ByteBuffer> written = new ArrayList<>();
+
+    @Test
+    public void countsUnsentBytes() {
+        final WatermarkedOutput output = new WatermarkedOutput(written::add, 10, 20, sessionListener);
+        output.accept(ByteBuffer.allocate(5));
+        output.accept(ByteBuffer.allocate(7));
+        assertEquals(12, output.unsentBytes());
+        written.get(0).position(3);
+        assertEquals(9, output.unsentBytes());
+        written.get(0).position(5);
+        written.get(1).position(1);
+        assertEquals(6, output.unsentBytes());
+    }
+
+    @Test
+    public void countsManyBuffers() {
+        final WatermarkedOutput output = new WatermarkedOutput(written::add, 1000, 2000, sessionListener);
+        for (int i = 0; i < 100; ++i) {
+            output.accept(ByteBuffer.allocate(3));
+        }
+        for (int i = 0; i < 50; ++i) {
+            written.get(i).position(3);
+        }
+        assertEquals(150, output.unsentBytes());
+    }
+
+    @Test
+    public void ignoresBuffersSentImmediately() {
+        final WatermarkedOutput output = new WatermarkedOutput(buffer -> buffer.position(buffer.limit()), 0, 0, sessionListener);
+        output.accept(ByteBuffer.allocate(5));
+        assertEquals(0, output.unsentBytes());
+        assertTrue(output.update());
+    }
+
+    @Test
+    public void changesWritabilityAtWatermarks() {
+        final Sequence sequence = context.sequence("writability");
+        context.checking(new Expectations() {{
+            oneOf(sessionListener).writabilityChanged(false); inSequence(sequence);
+            oneOf(sessionListener).writabilityChanged(true); inSequence(sequence);
+        }});
+        final WatermarkedOutput output = new WatermarkedOutput(written::add, 4, 8, sessionListener);
+        output.accept(ByteBuffer.allocate(8));
+        assertTrue(output.update());
+        output.accept(ByteBuffer.allocate(1));
+        assertFalse(output.update());
+        written.get(0).position(4);
+        assertFalse(output.update());
+        written.get(0).position(5);
+        assertTrue(output.update());
+    }
+
+    @Test
+    public void corkedOutputCountsTowardsTheWatermark() {
+        final Sequence sequence = context.sequence("writability");
+        context.checking(new Expectations() {{
+            oneOf(sessionListener).writabilityChanged(false); inSequence(sequence);
+            oneOf(sessionListener).writabilityChanged(true); inSequence(sequence);
+        }});
+        final WatermarkedOutput output = new WatermarkedOutput(written::add, 4, 8, sessionListener);
+        final CorkingOutput corkingOutput = new CorkingOutput(output, output::hold);
+        corkingOutput.cork();
+        corkingOutput.accept(ByteBuffer.allocate(5));
+        corkingOutput.accept(ByteBuffer.allocate(5));
+        assertEquals(10, output.unsentBytes());
+        assertFalse(output.update());
+        corkingOutput.uncork();
+        assertEquals(10, output.unsentBytes());
+        written.get(0).position(10);
+        assertTrue(output.update());
+    }
+}
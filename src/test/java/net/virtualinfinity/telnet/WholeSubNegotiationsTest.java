@@ -0,0 +1,46 @@
+package net.virtualinfinity.telnet;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class WholeSubNegotiationsTest {
+    private static final byte IAC = TelnetConstants.IAC;
+
+    private final List<ByteBuffer> sent = new ArrayList<>();
+    /**
+     * Only implements the abstract method, like a channel written before frames and writers were added.
+     */
+    private final SubNegotiationOutputChannel channel = (optionId, data) -> {
+        assertEquals(24, optionId);
+        sent.add(data);
+    };
+
+    @Test
+    public void defaultFrameSendsTheDecodedData() {
+        channel.frame(24).put((byte) 1).put(IAC).putShort(2).send();
+        assertEquals(ByteBuffer.wrap(new byte[]{1, IAC, 0, 2}), sent.get(0));
+    }
+
+    @Test
+    public void defaultWriterSendsTheWholeSubNegotiationWhenClosed() throws IOException {
+        final byte[] chunk = new byte[100];
+        chunk[50] = IAC;
+        try (SubNegotiationWriter writer = channel.open(24)) {
+            writer.write(ByteBuffer.wrap(chunk));
+            writer.write(ByteBuffer.wrap(chunk));
+            assertEquals(0, sent.size());
+        }
+        final ByteBuffer expected = ByteBuffer.allocate(200);
+        expected.put(chunk).put(chunk).flip();
+        assertEquals(expected, sent.get(0));
+    }
+}
@@ -0,0 +1,69 @@
+package net.virtualinfinity.telnet.option;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class BoundedSubNegotiationListenerTest {
+    private final List<ByteBuffer> parsed = new ArrayList<>();
+
+    @Test
+    public void accumulatesDataAcrossCalls() {
+        final RecordingListener listener = new RecordingListener(4, BoundedSubNegotiationListener.OverflowPolicy.DROP);
+        receive(listener, new byte[]{1, 2}, new byte[]{3});
+        receive(listener, new byte[]{4});
+        assertEquals(ByteBuffer.wrap(new byte[]{1, 2, 3}), parsed.get(0));
+        assertEquals(ByteBuffer.wrap(new byte[]{4}), parsed.get(1));
+        assertEquals(0, listener.overflows());
+    }
+
+    @Test
+    public void truncatesOversizedSubNegotiation() {
+        final RecordingListener listener = new RecordingListener(2, BoundedSubNegotiationListener.OverflowPolicy.TRUNCATE);
+        receive(listener, new byte[]{1}, new byte[]{2, 3}, new byte[]{4});
+        assertEquals(ByteBuffer.wrap(new byte[]{1, 2}), parsed.get(0));
+        assertEquals(1, listener.overflows());
+    }
+
+    @Test
+    public void dropsOversizedSubNegotiation() {
+        final RecordingListener listener = new RecordingListener(2, BoundedSubNegotiationListener.OverflowPolicy.DROP);
+        receive(listener, new byte[]{1, 2, 3});
+        receive(listener, new byte[]{4});
+        assertEquals(1, parsed.size());
+        assertEquals(ByteBuffer.wrap(new byte[]{4}), parsed.get(0));
+        assertEquals(1, listener.overflows());
+    }
+
+    private static void receive(SubNegotiationListener listener, byte[]... chunks) {
+        listener.startSubNegotiation();
+        for (final byte[] chunk : chunks) {
+            final ByteBuffer data = ByteBuffer.wrap(chunk);
+            listener.subNegotiationData(data);
+            assertEquals(0, data.remaining());
+        }
+        listener.endSubNegotiation();
+    }
+
+    private class RecordingListener extends BoundedSubNegotiationListener {
+        RecordingListener(int maxSize, OverflowPolicy overflowPolicy) {
+            super(maxSize, overflowPolicy);
+        }
+
+        @Override
+        protected void subNegotiation(ByteBuffer data) {
+            assertTrue(data.isReadOnly());
+            final ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+            copy.put(data).flip();
+            parsed.add(copy);
+        }
+    }
+}